@@ -38,6 +38,13 @@ public class AddressDecoder {
         return Optional.ofNullable(properties.get("flavor")).map(JsonNode::asText);
     }
 
+    /**
+     * The number of brokers the queue of the address should be placed on, if set.
+     */
+    public Optional<Integer> replicas() {
+        return Optional.ofNullable(properties.get("replicas")).map(JsonNode::asInt);
+    }
+
     public Optional<String> uuid() {
         return Optional.ofNullable(properties.get("uuid")).map(JsonNode::asText);
     }
@@ -22,21 +22,25 @@ import io.vertx.proton.ProtonConnection;
 import io.vertx.proton.ProtonSender;
 import io.vertx.proton.ProtonServer;
 import io.vertx.proton.ProtonSession;
+import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.messaging.Source;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * AMQP server endpoint that handles connections to the service and propagates config for a config map specified
- * as the address to which the client wants to receive.
- *
- * TODO: Handle disconnects and unsubscribe
+ * as the address to which the client wants to receive. Subscribers are removed when their link or connection closes.
  */
 public class AMQPServer extends AbstractVerticle {
     private static final Logger log = LoggerFactory.getLogger(AMQPServer.class.getName());
+    /**
+     * Link property set by receivers wanting a snapshot followed by deltas rather than all resources on every change.
+     */
+    public static final Symbol VERSIONED = Symbol.getSymbol("versioned");
 
     private final Map<String, ResourceDatabase> databaseMap;
     private final String hostname;
@@ -51,37 +55,84 @@ public class AMQPServer extends AbstractVerticle {
     }
 
     private void connectHandler(ProtonConnection connection) {
+        // Subscriptions of the links on this connection, only accessed from the context of this verticle
+        Map<ProtonSender, Runnable> subscriptions = new LinkedHashMap<>();
         connection.setContainer("configuration-service");
         connection.openHandler(conn -> {
             log.info("Connection opened");
         }).closeHandler(conn -> {
+            unsubscribeAll(subscriptions);
             connection.close();
             connection.disconnect();
             log.info("Connection closed");
         }).disconnectHandler(protonConnection -> {
+            unsubscribeAll(subscriptions);
             connection.disconnect();
             log.info("Disconnected");
         }).open();
 
         connection.sessionOpenHandler(ProtonSession::open);
-        connection.senderOpenHandler(sender -> senderOpenHandler(connection, sender));
+        connection.senderOpenHandler(sender -> senderOpenHandler(connection, sender, subscriptions));
+    }
+
+    private static void unsubscribeAll(Map<ProtonSender, Runnable> subscriptions) {
+        for (Runnable unsubscribe : new ArrayList<>(subscriptions.values())) {
+            unsubscribe.run();
+        }
+        subscriptions.clear();
     }
 
-    private void senderOpenHandler(ProtonConnection connection, ProtonSender sender) {
+    private void senderOpenHandler(ProtonConnection connection, ProtonSender sender, Map<ProtonSender, Runnable> subscriptions) {
         sender.setSource(sender.getRemoteSource());
         Source source = (Source) sender.getRemoteSource();
 
         try {
             ResourceDatabase database = lookupDatabase(source.getAddress());
-            database.subscribe(createStringFilter(source.getFilter()), sender::send);
+            ConflatingSubscriber subscriber = createSubscriber(sender);
+            Map<String, String> filter = createStringFilter(source.getFilter());
+            database.subscribe(filter, subscriber);
+            subscriptions.put(sender, () -> unsubscribe(database, filter, subscriber));
+            sender.closeHandler(result -> {
+                unsubscribe(subscriptions.remove(sender));
+                sender.close();
+            });
+            sender.detachHandler(result -> {
+                unsubscribe(subscriptions.remove(sender));
+                sender.detach();
+            });
+            subscriber.start();
             sender.open();
             log.info("Added subscriber {} for config {}", connection.getRemoteContainer(), sender.getRemoteSource().getAddress());
         } catch (Exception e) {
             log.info("Failed creating subscriber {} for config {}", connection.getRemoteContainer(), sender.getRemoteSource().getAddress(), e);
+            unsubscribe(subscriptions.remove(sender));
             sender.close();
         }
     }
 
+    ConflatingSubscriber createSubscriber(ProtonSender sender) {
+        return new ConflatingSubscriber(context, sender, isVersioned(sender));
+    }
+
+    private static void unsubscribe(Runnable unsubscribe) {
+        if (unsubscribe != null) {
+            unsubscribe.run();
+        }
+    }
+
+    private static void unsubscribe(ResourceDatabase database, Map<String, String> filter, ConflatingSubscriber subscriber) {
+        try {
+            database.unsubscribe(filter, subscriber);
+        } catch (Exception e) {
+            log.warn("Error removing subscriber", e);
+        }
+    }
+
+    private static boolean isVersioned(ProtonSender sender) {
+        Map<Symbol, Object> properties = sender.getRemoteProperties();
+        return properties != null && Boolean.TRUE.equals(properties.get(VERSIONED));
+    }
+
     private ResourceDatabase lookupDatabase(String address) {
         if (databaseMap.containsKey(address)) {
             return databaseMap.get(address);
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.config.service.amqp;
+
+import enmasse.config.service.model.Subscriber;
+import io.vertx.core.Context;
+import io.vertx.proton.ProtonSender;
+import org.apache.qpid.proton.message.Message;
+
+import java.util.function.Supplier;
+
+/**
+ * Subscriber holding at most one undelivered message for a sender, which is sent once the sender has credit. A new
+ * message replaces the one pending, so a slow receiver never makes messages pile up, and gets the latest state rather
+ * than every state in between. For versioned subscribers, a delta arriving while a message is pending is replaced by
+ * the snapshot it leads to, which stands in for all the deltas not delivered.
+ */
+class ConflatingSubscriber implements Subscriber {
+    private final Context context;
+    private final ProtonSender sender;
+    private final boolean versioned;
+    private Message pending;
+
+    ConflatingSubscriber(Context context, ProtonSender sender, boolean versioned) {
+        this.context = context;
+        this.sender = sender;
+        this.versioned = versioned;
+    }
+
+    /**
+     * Start sending pending messages whenever the sender gets credit. Must be called from the context of the sender.
+     */
+    void start() {
+        sender.sendQueueDrainHandler(s -> flush());
+    }
+
+    @Override
+    public void resourcesUpdated(Message message) {
+        synchronized (this) {
+            pending = message;
+        }
+        context.runOnContext(v -> flush());
+    }
+
+    @Override
+    public void deltaUpdated(Message delta, Supplier<Message> snapshot) {
+        synchronized (this) {
+            if (pending == null) {
+                pending = delta;
+            } else {
+                Message latest = snapshot.get();
+                pending = latest != null ? latest : delta;
+            }
+        }
+        context.runOnContext(v -> flush());
+    }
+
+    @Override
+    public boolean isVersioned() {
+        return versioned;
+    }
+
+    private void flush() {
+        if (!sender.isOpen() || sender.sendQueueFull()) {
+            return;
+        }
+        Message message;
+        synchronized (this) {
+            message = pending;
+            pending = null;
+        }
+        if (message != null) {
+            sender.send(message);
+        }
+    }
+}
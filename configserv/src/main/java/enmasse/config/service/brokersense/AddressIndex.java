@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.config.service.brokersense;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enmasse.config.service.kubernetes.ResourceIndex;
+import enmasse.config.service.podsense.PodResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index from address to the broker pods holding it, built from the addressList annotation of the pods. The
+ * annotation of a pod is only decoded when the pod is added or modified.
+ */
+class AddressIndex implements ResourceIndex<PodResource> {
+    private static final Logger log = LoggerFactory.getLogger(AddressIndex.class.getName());
+    private static final ObjectMapper mapper = new ObjectMapper();
+    static final String ADDRESS_LIST_ANNOTATION = "addressList";
+
+    // Addresses of each pod, keyed by pod name
+    private final Map<String, Set<String>> addressesByPod = new HashMap<>();
+    // Pods holding each address, keyed by address and pod name
+    private final Map<String, Map<String, PodResource>> podsByAddress = new HashMap<>();
+
+    @Override
+    public void resourceAdded(PodResource pod) {
+        resourceRemoved(pod);
+        Set<String> addresses = decodeAddresses(pod.getAnnotations().get(ADDRESS_LIST_ANNOTATION));
+        addressesByPod.put(pod.getName(), addresses);
+        for (String address : addresses) {
+            podsByAddress.computeIfAbsent(address, a -> new LinkedHashMap<>()).put(pod.getName(), pod);
+        }
+    }
+
+    @Override
+    public void resourceRemoved(PodResource pod) {
+        Set<String> addresses = addressesByPod.remove(pod.getName());
+        if (addresses == null) {
+            return;
+        }
+        for (String address : addresses) {
+            Map<String, PodResource> pods = podsByAddress.get(address);
+            pods.remove(pod.getName());
+            if (pods.isEmpty()) {
+                podsByAddress.remove(address);
+            }
+        }
+    }
+
+    @Override
+    public Set<PodResource> getResources(Map<String, String> filter) {
+        Map<String, PodResource> pods = podsByAddress.get(filter.get("address"));
+        return pods == null ? Collections.emptySet() : new LinkedHashSet<>(pods.values());
+    }
+
+    static Set<String> decodeAddresses(String addressListJson) {
+        Set<String> addressList = new HashSet<>();
+        if (addressListJson == null) {
+            return addressList;
+        }
+        try {
+            JsonNode array = mapper.readTree(addressListJson);
+            if (!array.isArray()) {
+                log.warn("Address list " + addressListJson + " is not an array");
+                return addressList;
+            }
+            for (int i = 0; i < array.size(); i++) {
+                addressList.add(array.get(i).asText());
+            }
+        } catch (IOException e) {
+            log.warn("Unable to decode address list " + addressListJson, e);
+        }
+        return addressList;
+    }
+}
@@ -1,7 +1,6 @@
 package enmasse.config.service.brokersense;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import enmasse.config.service.kubernetes.ResourceIndex;
 import enmasse.config.service.model.LabelSet;
 import enmasse.config.service.model.ResourceFactory;
 import enmasse.config.service.kubernetes.MessageEncoder;
@@ -11,22 +10,17 @@ import enmasse.config.service.podsense.PodSenseMessageEncoder;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.dsl.Operation;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.function.Predicate;
 
 /**
- * A variant of PodSense where the annotation field is inspected for matching addresses.
+ * A variant of PodSense where the annotation field is inspected for matching addresses. All subscriptions share one
+ * watch on the broker pods, and the pods for the address of a subscription are looked up in an {@link AddressIndex}.
  */
 public class BrokerSenseSubscriptionConfig implements enmasse.config.service.kubernetes.SubscriptionConfig<PodResource> {
-    private static final Logger log = LoggerFactory.getLogger(BrokerSenseSubscriptionConfig.class.getName());
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final LabelSet BROKER_LABELS = LabelSet.fromMap(Collections.singletonMap("role", "broker"));
 
     @Override
     public MessageEncoder<PodResource> getMessageEncoder() {
@@ -38,7 +32,7 @@ public class BrokerSenseSubscriptionConfig implements enmasse.config.service.kub
     public ObserverOptions getObserverOptions(KubernetesClient client, Map<String, String> filter) {
         Operation<Pod, ?, ?, ?>[] ops = new Operation[1];
         ops[0] = client.pods();
-        return new ObserverOptions(LabelSet.fromMap(Collections.singletonMap("role", "broker")), ops);
+        return new ObserverOptions(BROKER_LABELS, ops);
     }
 
     @Override
@@ -48,23 +42,17 @@ public class BrokerSenseSubscriptionConfig implements enmasse.config.service.kub
 
     @Override
     public Predicate<PodResource> getResourceFilter(Map<String, String> filter) {
-        String address = filter.get("address");
-        return podResource -> {
-            Set<String> addresses = decodeAddresses(podResource.getAnnotations().get("addressList"));
-            return podResource.getHost() != null && !podResource.getHost().isEmpty() && addresses.contains(address);
-        };
+        // The index only gives the pods holding the address of the filter
+        return podResource -> podResource.getHost() != null && !podResource.getHost().isEmpty();
     }
 
-    private Set<String> decodeAddresses(String addressListJson) {
-        Set<String> addressList = new HashSet<>();
-        try {
-            ArrayNode array = (ArrayNode) mapper.readTree(addressListJson);
-            for (int i = 0; i < array.size(); i++) {
-                addressList.add(array.get(0).asText());
-            }
-        } catch (IOException e) {
-            log.warn("Unable to decode address list " + addressListJson, e);
-        }
-        return addressList;
+    @Override
+    public LabelSet getObserverKey(Map<String, String> filter) {
+        return BROKER_LABELS;
+    }
+
+    @Override
+    public ResourceIndex<PodResource> createResourceIndex() {
+        return new AddressIndex();
     }
 }
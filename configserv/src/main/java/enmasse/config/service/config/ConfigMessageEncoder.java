@@ -3,8 +3,9 @@ package enmasse.config.service.config;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import enmasse.config.service.kubernetes.MessageEncoder;
+import enmasse.config.service.kubernetes.DeltaMessageEncoder;
 import enmasse.config.AddressEncoder;
 import enmasse.config.AddressDecoder;
 import org.apache.qpid.proton.amqp.messaging.AmqpValue;
@@ -15,34 +16,66 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 
 /**
- * Encodes a set of address configs to an AMQP message
+ * Encodes a set of address configs to an AMQP message. For versioned subscriptions, a snapshot has the same format as
+ * a full message, and a delta holds the addresses added or modified under "updated" and the addresses removed under
+ * "removed".
  */
-public class ConfigMessageEncoder implements MessageEncoder<ConfigResource> {
+public class ConfigMessageEncoder implements DeltaMessageEncoder<ConfigResource, JsonNode> {
     private static final Logger log = LoggerFactory.getLogger(ConfigMessageEncoder.class.getName());
     private static final ObjectMapper mapper = new ObjectMapper();
 
     @Override
     public Message encode(Set<ConfigResource> resources) throws IOException {
-        Message message = Message.Factory.create();
-        ObjectNode root = mapper.createObjectNode();
+        Message message = encodeSnapshot(encodeEntries(resources));
+        log.info("Address config encoded: '" + ((AmqpValue)message.getBody()).getValue() + "'");
+        return message;
+    }
+
+    @Override
+    public Map<String, JsonNode> encodeEntries(Set<ConfigResource> resources) {
+        Map<String, JsonNode> entries = new LinkedHashMap<>();
         for (ConfigResource config : resources) {
             for (Map.Entry<String, String> entry : config.getData().entrySet()) {
                 AddressDecoder decoder = new AddressDecoder(entry.getValue());
 
-                ObjectNode address = root.putObject(entry.getKey());
+                ObjectNode address = mapper.createObjectNode();
                 address.put("store_and_forward", decoder.storeAndForward());
                 address.put("multicast", decoder.multicast());
                 address.put("group_id", config.getGroup());
+                decoder.replicas().ifPresent(replicas -> address.put("replicas", replicas));
+                entries.put(entry.getKey(), address);
             }
         }
+        return entries;
+    }
+
+    @Override
+    public Message encodeSnapshot(Map<String, JsonNode> entries) throws IOException {
+        ObjectNode root = mapper.createObjectNode();
+        root.setAll(entries);
+        return createMessage(root);
+    }
+
+    @Override
+    public Message encodeDelta(Map<String, JsonNode> updated, Set<String> removed) throws IOException {
+        ObjectNode root = mapper.createObjectNode();
+        root.putObject("updated").setAll(updated);
+        ArrayNode removedNode = root.putArray("removed");
+        removed.forEach(removedNode::add);
+        Message message = createMessage(root);
+        log.info("Address config delta encoded: " + updated.size() + " updated, " + removed.size() + " removed");
+        return message;
+    }
+
+    private static Message createMessage(JsonNode root) throws IOException {
+        Message message = Message.Factory.create();
         message.setBody(createBody(root));
         message.setContentType("application/json");
-        log.info("Address config encoded: '" + ((AmqpValue)message.getBody()).getValue() + "'");
         return message;
     }
 
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.config.service.kubernetes;
+
+import enmasse.config.service.model.Resource;
+import org.apache.qpid.proton.message.Message;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interface for encoders supporting versioned subscriptions, where a subscriber gets a snapshot of all entries
+ * followed by only the entries added, modified or removed. Entries are the parts of the resources a subscriber
+ * knows individually, such as the addresses of an address config, and are identified by key.
+ *
+ * @param <E> The type of encoded entries, which must implement equals.
+ */
+public interface DeltaMessageEncoder<T extends Resource, E> extends MessageEncoder<T> {
+    /**
+     * Encode the entries of a set of resources, by key.
+     */
+    Map<String, E> encodeEntries(Set<T> set);
+
+    Message encodeSnapshot(Map<String, E> entries) throws IOException;
+
+    /**
+     * @param updated The entries added or modified, by key.
+     * @param removed The keys of the entries removed.
+     */
+    Message encodeDelta(Map<String, E> updated, Set<String> removed) throws IOException;
+}
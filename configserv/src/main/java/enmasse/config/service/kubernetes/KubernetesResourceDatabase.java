@@ -26,43 +26,156 @@ import org.slf4j.LoggerFactory;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ResourceDatabase backed by OpenShift/Kubernetes REST API supporting subscription for a resource of a particular type
+ *
+ * Observers are shared by subscribers whose filters have the same observer key, and closed together with their watches once the last
+ * subscriber has been gone for the idle timeout. A subscriber returning within that time reuses the observer.
  */
 public class KubernetesResourceDatabase<T extends Resource> implements AutoCloseable, ResourceDatabase {
     private static final Logger log = LoggerFactory.getLogger(KubernetesResourceDatabase.class.getName());
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
     private final KubernetesClient client;
 
-    private final Map<LabelSet, KubernetesResourceObserver<T>> observerMap = new LinkedHashMap<>();
+    private final Map<LabelSet, ObserverEntry<T>> observerMap = new LinkedHashMap<>();
     private final SubscriptionConfig<T> subscriptionConfig;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final long idleTimeout;
 
     public KubernetesResourceDatabase(KubernetesClient client, SubscriptionConfig<T> subscriptionConfig) {
+        this(client, subscriptionConfig, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "observer-reaper");
+            thread.setDaemon(true);
+            return thread;
+        }), DEFAULT_IDLE_TIMEOUT, true);
+    }
+
+    /**
+     * @param executor Executor on which idle observers are closed.
+     * @param idleTimeout The time in milliseconds an observer without subscribers is kept before it is closed.
+     */
+    public KubernetesResourceDatabase(KubernetesClient client, SubscriptionConfig<T> subscriptionConfig, ScheduledExecutorService executor, long idleTimeout) {
+        this(client, subscriptionConfig, executor, idleTimeout, false);
+    }
+
+    private KubernetesResourceDatabase(KubernetesClient client, SubscriptionConfig<T> subscriptionConfig, ScheduledExecutorService executor, long idleTimeout, boolean ownsExecutor) {
         this.client = client;
         this.subscriptionConfig = subscriptionConfig;
+        this.executor = executor;
+        this.idleTimeout = idleTimeout;
+        this.ownsExecutor = ownsExecutor;
     }
 
     @Override
     public synchronized void close() throws Exception {
-        for (KubernetesResourceObserver<T> observer : observerMap.values()) {
-            observer.close();
+        for (ObserverEntry<T> entry : observerMap.values()) {
+            entry.cancelIdleClose();
+            entry.observer.close();
+        }
+        observerMap.clear();
+        if (ownsExecutor) {
+            executor.shutdownNow();
         }
     }
 
     public synchronized void subscribe(Map<String, String> filter, Subscriber subscriber) throws Exception {
-        LabelSet key = LabelSet.fromMap(filter);
-        KubernetesResourceObserver<T> observer = observerMap.get(key);
-        if (observer == null) {
+        LabelSet key = subscriptionConfig.getObserverKey(filter);
+        ObserverEntry<T> entry = observerMap.get(key);
+        if (entry == null) {
             log.info("Creating new observer with filter " + filter);
-            SubscriptionManager<T> subscriptionManager = new SubscriptionManager<>(subscriptionConfig.getMessageEncoder(), subscriptionConfig.getResourceFilter(filter));
-            observer = new KubernetesResourceObserver<>(subscriptionConfig.getResourceFactory(), subscriptionConfig.getObserverOptions(client, filter), subscriptionManager);
-            observerMap.put(key, observer);
+            entry = new ObserverEntry<>(new KubernetesResourceObserver<>(subscriptionConfig.getResourceFactory(),
+                    subscriptionConfig.getObserverOptions(client, filter),
+                    subscriptionFilter -> new SubscriptionManager<>(subscriptionConfig.getMessageEncoder(), subscriptionConfig.getResourceFilter(subscriptionFilter)),
+                    subscriptionConfig.createResourceIndex()));
+            observerMap.put(key, entry);
 
-            observer.subscribe(subscriber);
-            observer.start();
+            entry.observer.subscribe(filter, subscriber);
+            entry.numSubscribers++;
+            try {
+                entry.observer.start();
+            } catch (Exception e) {
+                log.warn("Error starting observer with filter " + filter + ", removing it");
+                entry.observer.unsubscribe(filter, subscriber);
+                entry.numSubscribers--;
+                observerMap.remove(key);
+                closeObserver(entry);
+                throw e;
+            }
         } else {
             log.debug("Subscribing to existing observer");
-            observer.subscribe(subscriber);
+            entry.cancelIdleClose();
+            try {
+                entry.observer.subscribe(filter, subscriber);
+            } catch (RuntimeException e) {
+                scheduleIdleCloseIfUnused(key, entry);
+                throw e;
+            }
+            entry.numSubscribers++;
+        }
+    }
+
+    @Override
+    public synchronized void unsubscribe(Map<String, String> filter, Subscriber subscriber) {
+        LabelSet key = subscriptionConfig.getObserverKey(filter);
+        ObserverEntry<T> entry = observerMap.get(key);
+        if (entry == null || !entry.observer.unsubscribe(filter, subscriber)) {
+            return;
+        }
+        entry.numSubscribers--;
+        scheduleIdleCloseIfUnused(key, entry);
+    }
+
+    private void scheduleIdleCloseIfUnused(LabelSet key, ObserverEntry<T> entry) {
+        if (entry.numSubscribers == 0) {
+            log.debug("No subscribers left for observer with filter " + key + ", closing in " + idleTimeout + " ms");
+            entry.idleClose = executor.schedule(() -> closeIfIdle(key, entry), idleTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void closeIfIdle(LabelSet key, ObserverEntry<T> entry) {
+        if (entry.numSubscribers > 0 || observerMap.get(key) != entry) {
+            return;
+        }
+        observerMap.remove(key);
+        log.info("Closing idle observer with filter " + key);
+        closeObserver(entry);
+    }
+
+    private static void closeObserver(ObserverEntry<?> entry) {
+        try {
+            entry.observer.close();
+        } catch (Exception e) {
+            log.warn("Error closing observer", e);
+        }
+    }
+
+    /**
+     * The number of observers open, including those without subscribers that are not yet closed.
+     */
+    synchronized int getNumObservers() {
+        return observerMap.size();
+    }
+
+    private static class ObserverEntry<T extends Resource> {
+        private final KubernetesResourceObserver<T> observer;
+        private int numSubscribers;
+        private ScheduledFuture<?> idleClose;
+
+        private ObserverEntry(KubernetesResourceObserver<T> observer) {
+            this.observer = observer;
+        }
+
+        private void cancelIdleClose() {
+            if (idleClose != null) {
+                idleClose.cancel(false);
+                idleClose = null;
+            }
         }
     }
 }
@@ -16,6 +16,7 @@
 
 package enmasse.config.service.kubernetes;
 
+import enmasse.config.service.model.LabelSet;
 import enmasse.config.service.model.Resource;
 import enmasse.config.service.model.ResourceFactory;
 import enmasse.config.service.model.Subscriber;
@@ -29,9 +30,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Function;
 
 /**
- * A subscription to a set of resources;
+ * A subscription to a set of resources; Updates are passed on to a subscription manager per filter, which gets either
+ * all resources observed or, if there is an index, the resources the index gives for its filter.
  */
 public class KubernetesResourceObserver<T extends Resource> implements AutoCloseable, Watcher {
     private static final Logger log = LoggerFactory.getLogger(KubernetesResourceObserver.class.getName());
@@ -42,12 +45,22 @@ public class KubernetesResourceObserver<T extends Resource> implements AutoClose
 
     private final Set<T> resourceSet = new LinkedHashSet<>();
     private final ResourceFactory<T> resourceFactory;
-    private final SubscriptionManager<T> subscriptionManager;
+    private final Function<Map<String, String>, SubscriptionManager<T>> subscriptionManagerFactory;
+    private final ResourceIndex<T> resourceIndex;
+    private final Map<LabelSet, SubscriptionManager<T>> subscriptionManagers = new LinkedHashMap<>();
+    private boolean initialized = false;
 
-    public KubernetesResourceObserver(ResourceFactory<T> resourceFactory, ObserverOptions observerOptions, SubscriptionManager<T> subscriptionManager) {
+    /**
+     * @param subscriptionManagerFactory Creates the subscription manager for a filter.
+     * @param resourceIndex Index giving the resources for a filter, or null to give every filter all resources.
+     */
+    public KubernetesResourceObserver(ResourceFactory<T> resourceFactory, ObserverOptions observerOptions,
+                                      Function<Map<String, String>, SubscriptionManager<T>> subscriptionManagerFactory,
+                                      ResourceIndex<T> resourceIndex) {
         this.resourceFactory = resourceFactory;
         this.observerOptions = observerOptions;
-        this.subscriptionManager = subscriptionManager;
+        this.subscriptionManagerFactory = subscriptionManagerFactory;
+        this.resourceIndex = resourceIndex;
     }
 
     @SuppressWarnings("unchecked")
@@ -67,11 +80,16 @@ public class KubernetesResourceObserver<T extends Resource> implements AutoClose
         for (KubernetesResourceList list : initialResources) {
             for (Object item : list.getItems()) {
                 if (item instanceof HasMetadata) {
-                    resourceSet.add(resourceFactory.createResource((HasMetadata) item));
+                    T resource = resourceFactory.createResource((HasMetadata) item);
+                    resourceSet.add(resource);
+                    if (resourceIndex != null) {
+                        resourceIndex.resourceAdded(resource);
+                    }
                 }
             }
         }
-        subscriptionManager.resourcesUpdated(resourceSet);
+        initialized = true;
+        notifySubscriptionManagers();
     }
 
     @Override
@@ -82,10 +100,41 @@ public class KubernetesResourceObserver<T extends Resource> implements AutoClose
         watches.clear();
     }
 
-    public void subscribe(Subscriber subscriber) {
+    public synchronized void subscribe(Map<String, String> filter, Subscriber subscriber) {
+        LabelSet key = LabelSet.fromMap(filter);
+        SubscriptionManager<T> subscriptionManager = subscriptionManagers.get(key);
+        if (subscriptionManager == null) {
+            subscriptionManager = subscriptionManagerFactory.apply(filter);
+            subscriptionManagers.put(key, subscriptionManager);
+            if (initialized) {
+                subscriptionManager.resourcesUpdated(getResources(filter));
+            }
+        }
         subscriptionManager.subscribe(subscriber);
     }
 
+    public synchronized boolean unsubscribe(Map<String, String> filter, Subscriber subscriber) {
+        LabelSet key = LabelSet.fromMap(filter);
+        SubscriptionManager<T> subscriptionManager = subscriptionManagers.get(key);
+        if (subscriptionManager == null || !subscriptionManager.unsubscribe(subscriber)) {
+            return false;
+        }
+        if (!subscriptionManager.hasSubscribers()) {
+            subscriptionManagers.remove(key);
+        }
+        return true;
+    }
+
+    private void notifySubscriptionManagers() {
+        for (Map.Entry<LabelSet, SubscriptionManager<T>> entry : subscriptionManagers.entrySet()) {
+            entry.getValue().resourcesUpdated(getResources(entry.getKey().getLabelMap()));
+        }
+    }
+
+    private Set<T> getResources(Map<String, String> filter) {
+        return resourceIndex == null ? resourceSet : resourceIndex.getResources(filter);
+    }
+
     @Override
     public synchronized void eventReceived(Action action, Object obj) {
         if (!(obj instanceof HasMetadata)) {
@@ -94,6 +143,7 @@ public class KubernetesResourceObserver<T extends Resource> implements AutoClose
         T resource = resourceFactory.createResource((HasMetadata) obj);
         if (action.equals(Action.ADDED)) {
             resourceSet.add(resource);
+            addToIndex(resource);
             log.info("Resource " + resource + " added!");
         } else if (action.equals(Action.DELETED)) {
             deleteFromSet(resource);
@@ -102,15 +152,25 @@ public class KubernetesResourceObserver<T extends Resource> implements AutoClose
         } else if (action.equals(Action.MODIFIED)) {
             deleteFromSet(resource);
             resourceSet.add(resource);
+            addToIndex(resource);
             log.info("Resource " + resource + " updated!");
         } else if (action.equals(Action.ERROR)) {
             log.error("Received an error event for resource " + resource);
         }
-        subscriptionManager.resourcesUpdated(resourceSet);
+        notifySubscriptionManagers();
     }
 
-    private void deleteFromSet(Resource resource) {
+    private void addToIndex(T resource) {
+        if (resourceIndex != null) {
+            resourceIndex.resourceAdded(resource);
+        }
+    }
+
+    private void deleteFromSet(T resource) {
         resourceSet.removeIf(next -> next.getName().equals(resource.getName()) && next.getKind().equals(resource.getKind()));
+        if (resourceIndex != null) {
+            resourceIndex.resourceRemoved(resource);
+        }
     }
 
     @Override
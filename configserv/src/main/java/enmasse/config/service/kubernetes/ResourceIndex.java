@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.config.service.kubernetes;
+
+import enmasse.config.service.model.Resource;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index over the resources of an observer, giving the resources for the filter of a subscription without going
+ * through every resource observed.
+ */
+public interface ResourceIndex<T extends Resource> {
+    /**
+     * Add a resource, replacing any resource of the same kind and name.
+     */
+    void resourceAdded(T resource);
+
+    /**
+     * Remove the resource of the same kind and name, if any.
+     */
+    void resourceRemoved(T resource);
+
+    /**
+     * The resources for the filter of a subscription.
+     */
+    Set<T> getResources(Map<String, String> filter);
+}
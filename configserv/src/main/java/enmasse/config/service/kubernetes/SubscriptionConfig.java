@@ -1,5 +1,6 @@
 package enmasse.config.service.kubernetes;
 
+import enmasse.config.service.model.LabelSet;
 import enmasse.config.service.model.Resource;
 import enmasse.config.service.model.ResourceFactory;
 import io.fabric8.kubernetes.client.KubernetesClient;
@@ -15,4 +16,20 @@ public interface SubscriptionConfig<T extends Resource> {
     ObserverOptions getObserverOptions(KubernetesClient client, Map<String, String> filter);
     ResourceFactory<T> getResourceFactory();
     Predicate<T> getResourceFilter(Map<String, String> filter);
+
+    /**
+     * The key of the observer serving a filter. Subscriptions whose filters have the same key share one observer and
+     * its watches, so the key must identify the observer options.
+     */
+    default LabelSet getObserverKey(Map<String, String> filter) {
+        return LabelSet.fromMap(filter);
+    }
+
+    /**
+     * Create the index used by an observer to find the resources for the filter of a subscription, or null to give
+     * every subscription all resources observed.
+     */
+    default ResourceIndex<T> createResourceIndex() {
+        return null;
+    }
 }
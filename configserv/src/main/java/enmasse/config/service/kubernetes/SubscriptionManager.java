@@ -16,6 +16,7 @@
 
 package enmasse.config.service.kubernetes;
 
+import enmasse.config.service.model.EncodedMessage;
 import enmasse.config.service.model.Resource;
 import enmasse.config.service.model.Subscriber;
 import org.apache.qpid.proton.message.Message;
@@ -28,19 +29,36 @@ import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
- * Manages subscribers for a given set of OpenShift resources.
+ * Manages subscribers for a given set of OpenShift resources. Subscribers get all resources whenever they change,
+ * unless they are versioned and the encoder supports deltas, in which case they get a snapshot when subscribing and
+ * only the changed entries after that.
  */
 public class SubscriptionManager<T extends Resource> {
     private static final Logger log = LoggerFactory.getLogger(SubscriptionManager.class.getName());
 
     private final List<Subscriber> subscriberList = new ArrayList<>();
+    private final List<Subscriber> versionedSubscribers = new ArrayList<>();
     private final Set<T> resources = new LinkedHashSet<>();
     private final MessageEncoder<T> messageEncoder;
     private final Predicate<T> resourceFilter;
+    // Entries last sent to versioned subscribers, or null if the encoder does not support deltas
+    private final VersionedEntries<T, ?> versionedEntries;
+    // Message holding the current resources, encoded once for all subscribers until the resources change
+    private Message currentMessage;
 
+    @SuppressWarnings("unchecked")
     public SubscriptionManager(MessageEncoder<T> messageEncoder, Predicate<T> resourceFilter) {
         this.messageEncoder = messageEncoder;
         this.resourceFilter = resourceFilter;
+        if (messageEncoder instanceof DeltaMessageEncoder) {
+            this.versionedEntries = createVersionedEntries((DeltaMessageEncoder<T, ?>) messageEncoder);
+        } else {
+            this.versionedEntries = null;
+        }
+    }
+
+    private static <T extends Resource, E> VersionedEntries<T, E> createVersionedEntries(DeltaMessageEncoder<T, E> encoder) {
+        return new VersionedEntries<>(encoder);
     }
 
     /**
@@ -49,6 +67,16 @@ public class SubscriptionManager<T extends Resource> {
      * @param subscriber The subscriber handle.
      */
     public synchronized void subscribe(Subscriber subscriber) {
+        if (subscriber.isVersioned() && versionedEntries != null) {
+            versionedSubscribers.add(subscriber);
+            // A versioned subscriber always gets a snapshot, so that it knows the sequence number to continue from
+            Message snapshot = encodeSnapshot();
+            if (snapshot != null) {
+                subscriber.resourcesUpdated(snapshot);
+            }
+            return;
+        }
+
         subscriberList.add(subscriber);
         // Notify only when we have values
         if (!resources.isEmpty()) {
@@ -57,22 +85,58 @@ public class SubscriptionManager<T extends Resource> {
         }
     }
 
+    /**
+     * Stop sending updates to a subscriber.
+     *
+     * @param subscriber The subscriber handle.
+     * @return true if the subscriber was subscribed.
+     */
+    public synchronized boolean unsubscribe(Subscriber subscriber) {
+        return subscriberList.remove(subscriber) || versionedSubscribers.remove(subscriber);
+    }
+
+    public synchronized boolean hasSubscribers() {
+        return !subscriberList.isEmpty() || !versionedSubscribers.isEmpty();
+    }
+
     /**
      * Notify subscribers that the set of configs has been updated.
      */
     private void notifySubscribers() {
-        Optional<Message> message = encodeAndLog();
-        message.ifPresent(m -> subscriberList.forEach(s -> s.resourcesUpdated(m)));
+        if (!subscriberList.isEmpty()) {
+            Optional<Message> message = encodeAndLog();
+            message.ifPresent(m -> subscriberList.forEach(s -> s.resourcesUpdated(m)));
+        }
+        if (versionedEntries != null) {
+            try {
+                Optional<Message> delta = versionedEntries.update(Collections.unmodifiableSet(resources));
+                delta.ifPresent(m -> versionedSubscribers.forEach(s -> s.deltaUpdated(m, this::encodeSnapshot)));
+            } catch (IOException e) {
+                log.warn("Error encoding delta", e);
+            }
+        }
     }
 
-    private Optional<Message> encodeAndLog() {
-        Set<T> set = Collections.unmodifiableSet(resources);
+    private Message encodeSnapshot() {
         try {
-            return Optional.of(messageEncoder.encode(set));
+            return versionedEntries.snapshot();
         } catch (IOException e) {
-            log.warn("Error encoding message", e);
-            return Optional.empty();
+            log.warn("Error encoding snapshot", e);
+            return null;
+        }
+    }
+
+    private Optional<Message> encodeAndLog() {
+        if (currentMessage == null) {
+            Set<T> set = Collections.unmodifiableSet(resources);
+            try {
+                currentMessage = EncodedMessage.of(messageEncoder.encode(set));
+            } catch (IOException e) {
+                log.warn("Error encoding message", e);
+                return Optional.empty();
+            }
         }
+        return Optional.of(currentMessage);
     }
 
     public synchronized void resourcesUpdated(Set<T> updated) {
@@ -83,6 +147,7 @@ public class SubscriptionManager<T extends Resource> {
         if (!filtered.equals(resources)) {
             resources.clear();
             resources.addAll(filtered);
+            currentMessage = null;
             notifySubscribers();
         }
     }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.config.service.kubernetes;
+
+import enmasse.config.service.model.EncodedMessage;
+import enmasse.config.service.model.Resource;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.message.Message;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Keeps the entries last sent to versioned subscribers, and encodes the changes to them as deltas. Every delta gets
+ * the next sequence number, and a snapshot has the sequence number of the last delta, so that a subscriber seeing a
+ * gap in the sequence knows it has missed a delta and must subscribe again. Not thread safe.
+ */
+class VersionedEntries<T extends Resource, E> {
+    static final String SEQUENCE = "sequence";
+    static final String TYPE = "type";
+    static final String TYPE_SNAPSHOT = "snapshot";
+    static final String TYPE_DELTA = "delta";
+
+    private final DeltaMessageEncoder<T, E> encoder;
+    private Map<String, E> entries = Collections.emptyMap();
+    private long sequence = 0;
+    // Snapshot of the current sequence, encoded once for all subscribers joining before the next delta
+    private Message snapshot;
+
+    VersionedEntries(DeltaMessageEncoder<T, E> encoder) {
+        this.encoder = encoder;
+    }
+
+    /**
+     * Update the entries from a set of resources, returning the delta to send if any entries changed.
+     */
+    Optional<Message> update(Set<T> resources) throws IOException {
+        Map<String, E> current = encoder.encodeEntries(resources);
+        Map<String, E> updated = new LinkedHashMap<>();
+        for (Map.Entry<String, E> entry : current.entrySet()) {
+            if (!Objects.equals(entry.getValue(), entries.get(entry.getKey()))) {
+                updated.put(entry.getKey(), entry.getValue());
+            }
+        }
+        Set<String> removed = new HashSet<>(entries.keySet());
+        removed.removeAll(current.keySet());
+
+        entries = current;
+        if (updated.isEmpty() && removed.isEmpty()) {
+            return Optional.empty();
+        }
+        sequence++;
+        snapshot = null;
+        return Optional.of(withSequence(encoder.encodeDelta(updated, removed), TYPE_DELTA));
+    }
+
+    Message snapshot() throws IOException {
+        if (snapshot == null) {
+            snapshot = withSequence(encoder.encodeSnapshot(entries), TYPE_SNAPSHOT);
+        }
+        return snapshot;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    private Message withSequence(Message message, String type) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(SEQUENCE, sequence);
+        properties.put(TYPE, type);
+        message.setApplicationProperties(new ApplicationProperties(properties));
+        return EncodedMessage.of(message);
+    }
+}
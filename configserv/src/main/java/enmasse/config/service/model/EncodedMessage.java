@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.config.service.model;
+
+import org.apache.qpid.proton.codec.WritableBuffer;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.message.impl.MessageImpl;
+
+import java.nio.BufferOverflowException;
+import java.util.Arrays;
+
+/**
+ * A message that is encoded once when created. Whenever it is sent, the encoded bytes are copied as they are instead
+ * of encoding the message again. This lets one message be sent to many subscribers at the cost of copying its bytes.
+ * The message must not be modified once created, as changes are not reflected in what is sent.
+ */
+public class EncodedMessage extends MessageImpl {
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private final byte[] encoded;
+
+    @SuppressWarnings("deprecation")
+    private EncodedMessage(Message message) {
+        setHeader(message.getHeader());
+        setDeliveryAnnotations(message.getDeliveryAnnotations());
+        setMessageAnnotations(message.getMessageAnnotations());
+        setProperties(message.getProperties());
+        setApplicationProperties(message.getApplicationProperties());
+        setBody(message.getBody());
+        setFooter(message.getFooter());
+        this.encoded = encode(message);
+    }
+
+    public static EncodedMessage of(Message message) {
+        if (message instanceof EncodedMessage) {
+            return (EncodedMessage) message;
+        }
+        return new EncodedMessage(message);
+    }
+
+    private static byte[] encode(Message message) {
+        byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+        while (true) {
+            try {
+                int length = message.encode(buffer, 0, buffer.length);
+                return Arrays.copyOf(buffer, length);
+            } catch (BufferOverflowException e) {
+                buffer = new byte[buffer.length * 2];
+            }
+        }
+    }
+
+    @Override
+    public int encode(byte[] data, int offset, int length) {
+        if (encoded.length > length) {
+            throw new BufferOverflowException();
+        }
+        System.arraycopy(encoded, 0, data, offset, encoded.length);
+        return encoded.length;
+    }
+
+    @Override
+    public int encode(WritableBuffer buffer) {
+        buffer.put(encoded, 0, encoded.length);
+        return encoded.length;
+    }
+
+    public int getEncodedSize() {
+        return encoded.length;
+    }
+}
@@ -23,4 +23,9 @@ import java.util.Map;
  */
 public interface ResourceDatabase {
     void subscribe(Map<String, String> filter, Subscriber subscriber) throws Exception;
+
+    /**
+     * Remove a subscriber added with the same filter. Does nothing if the subscriber is not subscribed.
+     */
+    void unsubscribe(Map<String, String> filter, Subscriber subscriber) throws Exception;
 }
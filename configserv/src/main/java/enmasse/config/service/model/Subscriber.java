@@ -2,9 +2,28 @@ package enmasse.config.service.model;
 
 import org.apache.qpid.proton.message.Message;
 
+import java.util.function.Supplier;
+
 /**
  * Represents an AMQP resource subscriber.
  */
 public interface Subscriber {
     void resourcesUpdated(Message message);
+
+    /**
+     * Whether the subscriber wants a snapshot followed by deltas, rather than all resources on every change. Only
+     * honoured for resources whose encoder supports deltas.
+     */
+    default boolean isVersioned() {
+        return false;
+    }
+
+    /**
+     * Called instead of {@link #resourcesUpdated(Message)} with a delta for a versioned subscriber. The snapshot
+     * supplier gives the state after the delta, for subscribers that would rather send it in place of the delta and
+     * any earlier message still undelivered. The supplier may only be called from within this method.
+     */
+    default void deltaUpdated(Message delta, Supplier<Message> snapshot) {
+        resourcesUpdated(delta);
+    }
 }
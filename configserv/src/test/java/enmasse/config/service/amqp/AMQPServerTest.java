@@ -20,6 +20,7 @@ import enmasse.config.service.model.ResourceDatabase;
 import enmasse.config.service.model.Subscriber;
 import io.vertx.core.Vertx;
 import io.vertx.proton.ProtonMessageHandler;
+import io.vertx.proton.ProtonSender;
 import org.apache.qpid.proton.amqp.messaging.AmqpValue;
 import org.apache.qpid.proton.message.Message;
 import org.junit.After;
@@ -101,6 +102,46 @@ public class AMQPServerTest {
         assertThat(value, is("test1"));
     }
 
+    @Test
+    public void testUnsubscribeOnClose() throws Exception {
+        client.subscribe("foo", result -> {}, mock(ProtonMessageHandler.class));
+
+        ArgumentCaptor<Subscriber> subCapture = ArgumentCaptor.forClass(Subscriber.class);
+        verify(database, timeout(10000)).subscribe(mapCapture.capture(), subCapture.capture());
+
+        client.close();
+        verify(database, timeout(10000)).unsubscribe(eq(mapCapture.getValue()), eq(subCapture.getValue()));
+    }
+
+    @Test
+    public void testUnsubscribeWhenSubscriberFailsToStart() throws Exception {
+        AMQPServer failingServer = new AMQPServer("localhost", 0, Collections.singletonMap("foo", database)) {
+            @Override
+            ConflatingSubscriber createSubscriber(ProtonSender sender) {
+                return new ConflatingSubscriber(context, sender, false) {
+                    @Override
+                    void start() {
+                        throw new IllegalStateException("Unable to start subscriber");
+                    }
+                };
+            }
+        };
+        vertx.deployVerticle(failingServer);
+        TestClient failingClient = new TestClient(vertx, "localhost", waitForPort(failingServer));
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            failingClient.subscribe("foo", result -> latch.countDown(), mock(ProtonMessageHandler.class));
+            assertTrue(latch.await(1, TimeUnit.MINUTES));
+
+            ArgumentCaptor<Subscriber> subCapture = ArgumentCaptor.forClass(Subscriber.class);
+            verify(database, timeout(10000)).subscribe(mapCapture.capture(), subCapture.capture());
+            verify(database, timeout(10000)).unsubscribe(eq(mapCapture.getValue()), eq(subCapture.getValue()));
+        } finally {
+            failingClient.close();
+            failingServer.stop();
+        }
+    }
+
     @Test
     public void testSubscribeWithBadKey() throws InterruptedException {
         ProtonMessageHandler msgHandler = mock(ProtonMessageHandler.class);
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.config.service.amqp;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.proton.ProtonSender;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+public class ConflatingSubscriberTest {
+    private Context context;
+    private ProtonSender sender;
+
+    @Before
+    public void setup() {
+        context = mock(Context.class);
+        doAnswer(invocation -> {
+            ((Handler<Void>) invocation.getArguments()[0]).handle(null);
+            return null;
+        }).when(context).runOnContext(any());
+        sender = mock(ProtonSender.class);
+        when(sender.isOpen()).thenReturn(true);
+    }
+
+    private Handler<ProtonSender> start(ConflatingSubscriber subscriber) {
+        ArgumentCaptor<Handler<ProtonSender>> drainHandler = ArgumentCaptor.forClass(Handler.class);
+        subscriber.start();
+        verify(sender).sendQueueDrainHandler(drainHandler.capture());
+        return drainHandler.getValue();
+    }
+
+    @Test
+    public void testOnlyLatestSentWhenCreditArrives() {
+        ConflatingSubscriber subscriber = new ConflatingSubscriber(context, sender, false);
+        Handler<ProtonSender> drainHandler = start(subscriber);
+        Message first = Message.Factory.create();
+        Message second = Message.Factory.create();
+
+        when(sender.sendQueueFull()).thenReturn(true);
+        subscriber.resourcesUpdated(first);
+        subscriber.resourcesUpdated(second);
+        verify(sender, never()).send(any(Message.class));
+
+        when(sender.sendQueueFull()).thenReturn(false);
+        drainHandler.handle(sender);
+        drainHandler.handle(sender);
+        verify(sender).send(second);
+        verify(sender, never()).send(first);
+    }
+
+    @Test
+    public void testPendingDeltaReplacedBySnapshot() {
+        ConflatingSubscriber subscriber = new ConflatingSubscriber(context, sender, true);
+        Handler<ProtonSender> drainHandler = start(subscriber);
+        Message delta1 = Message.Factory.create();
+        Message delta2 = Message.Factory.create();
+        Message snapshot = Message.Factory.create();
+
+        when(sender.sendQueueFull()).thenReturn(false);
+        subscriber.deltaUpdated(delta1, () -> snapshot);
+        verify(sender).send(delta1);
+
+        when(sender.sendQueueFull()).thenReturn(true);
+        subscriber.deltaUpdated(delta1, () -> snapshot);
+        subscriber.deltaUpdated(delta2, () -> snapshot);
+
+        when(sender.sendQueueFull()).thenReturn(false);
+        drainHandler.handle(sender);
+        verify(sender).send(snapshot);
+        verify(sender, never()).send(delta2);
+    }
+}
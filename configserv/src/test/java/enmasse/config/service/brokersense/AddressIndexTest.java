@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.config.service.brokersense;
+
+import enmasse.config.service.podsense.PodResource;
+import io.fabric8.kubernetes.api.model.ContainerBuilder;
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodConditionBuilder;
+import io.fabric8.kubernetes.api.model.PodSpecBuilder;
+import io.fabric8.kubernetes.api.model.PodStatusBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class AddressIndexTest {
+    @Test
+    public void testLookup() {
+        AddressIndex index = new AddressIndex();
+        index.resourceAdded(createPod("broker1", "[\"queue1\",\"queue2\"]"));
+        index.resourceAdded(createPod("broker2", "[\"queue2\"]"));
+        index.resourceAdded(createPod("broker3", null));
+
+        assertThat(lookup(index, "queue1"), is(Collections.singleton("broker1")));
+        assertThat(lookup(index, "queue2"), is(set("broker1", "broker2")));
+        assertTrue(lookup(index, "queue3").isEmpty());
+        assertTrue(index.getResources(Collections.emptyMap()).isEmpty());
+    }
+
+    @Test
+    public void testModifiedAndRemoved() {
+        AddressIndex index = new AddressIndex();
+        index.resourceAdded(createPod("broker1", "[\"queue1\"]"));
+        index.resourceAdded(createPod("broker1", "[\"queue2\"]"));
+
+        assertTrue(lookup(index, "queue1").isEmpty());
+        assertThat(lookup(index, "queue2"), is(Collections.singleton("broker1")));
+
+        index.resourceRemoved(createPod("broker1", null));
+        assertTrue(lookup(index, "queue2").isEmpty());
+    }
+
+    @Test
+    public void testDecodeAddresses() {
+        assertThat(AddressIndex.decodeAddresses("[\"a\",\"b\",\"c\"]"), is(set("a", "b", "c")));
+        assertTrue(AddressIndex.decodeAddresses("{\"a\":\"b\"}").isEmpty());
+        assertTrue(AddressIndex.decodeAddresses("not json").isEmpty());
+    }
+
+    private static Set<String> lookup(AddressIndex index, String address) {
+        return index.getResources(Collections.singletonMap("address", address)).stream()
+                .map(PodResource::getName)
+                .collect(Collectors.toSet());
+    }
+
+    private static Set<String> set(String ... values) {
+        return Arrays.stream(values).collect(Collectors.toSet());
+    }
+
+    private static PodResource createPod(String name, String addressList) {
+        ObjectMetaBuilder metadata = new ObjectMetaBuilder()
+                .withName(name)
+                .addToLabels("role", "broker");
+        if (addressList != null) {
+            metadata.addToAnnotations(AddressIndex.ADDRESS_LIST_ANNOTATION, addressList);
+        }
+        return new PodResource(new PodBuilder()
+                .withKind("Pod")
+                .withMetadata(metadata.build())
+                .withSpec(new PodSpecBuilder()
+                        .withContainers(new ContainerBuilder()
+                                .withName("broker")
+                                .build())
+                        .build())
+                .withStatus(new PodStatusBuilder()
+                        .withConditions(new PodConditionBuilder()
+                                .withType("Ready")
+                                .withStatus("True")
+                                .build())
+                        .withPodIP("10.0.0.1")
+                        .withPhase("Running")
+                        .build())
+                .build());
+    }
+}
@@ -16,6 +16,7 @@
 
 package enmasse.config.service.config;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import enmasse.config.AddressEncoder;
 import enmasse.config.LabelKeys;
 import io.fabric8.kubernetes.api.model.ConfigMap;
@@ -45,6 +46,17 @@ public class ConfigMessageEncoderTest {
         assertThat(json, is("{\"myqueue\":{\"store_and_forward\":true,\"multicast\":false,\"group_id\":\"c1\"},\"myqueue2\":{\"store_and_forward\":true,\"multicast\":false,\"group_id\":\"c1\"},\"mytopic\":{\"store_and_forward\":true,\"multicast\":true,\"group_id\":\"c2\"}}"));
     }
 
+    @Test
+    public void testDelta() throws IOException {
+        ConfigMessageEncoder encoder = new ConfigMessageEncoder();
+        Map<String, JsonNode> entries = encoder.encodeEntries(Collections.singleton(
+                new ConfigResource(createConfigMap("c1", Arrays.asList("myqueue"), true, false))));
+
+        Message message = encoder.encodeDelta(entries, Collections.singleton("oldqueue"));
+        String json = (String) ((AmqpValue) message.getBody()).getValue();
+        assertThat(json, is("{\"updated\":{\"myqueue\":{\"store_and_forward\":true,\"multicast\":false,\"group_id\":\"c1\"}},\"removed\":[\"oldqueue\"]}"));
+    }
+
     private ConfigMap createConfigMap(String name, List<String> addresses, boolean storeAndForward, boolean multicast) {
         Map<String, String> data = new LinkedHashMap<>();
         for (String address : addresses) {
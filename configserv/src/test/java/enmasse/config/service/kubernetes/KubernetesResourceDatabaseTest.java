@@ -17,6 +17,7 @@
 package enmasse.config.service.kubernetes;
 
 import enmasse.config.service.TestResource;
+import enmasse.config.service.model.LabelSet;
 import enmasse.config.service.model.Subscriber;
 import io.fabric8.kubernetes.api.model.ConfigMap;
 import io.fabric8.kubernetes.api.model.ConfigMapList;
@@ -128,6 +129,95 @@ public class KubernetesResourceDatabaseTest {
         assertValue(sub.lastValue, "v22");
     }
 
+    @Test
+    public void testIdleObserverClosed() throws Exception {
+        Watch watch = mock(Watch.class);
+        when(mapOp.watch(any())).thenReturn(watch);
+        KubernetesResourceDatabase<TestResource> idleDatabase = new KubernetesResourceDatabase<>(client, new TestSubscriptionConfig(), executor, 0);
+        TestSubscriber sub1 = new TestSubscriber();
+        TestSubscriber sub2 = new TestSubscriber();
+
+        idleDatabase.subscribe(Collections.emptyMap(), sub1);
+        idleDatabase.subscribe(Collections.emptyMap(), sub2);
+        idleDatabase.unsubscribe(Collections.emptyMap(), sub1);
+        waitForExecutor();
+        verify(watch, never()).close();
+        assertEquals(1, idleDatabase.getNumObservers());
+
+        idleDatabase.unsubscribe(Collections.emptyMap(), sub2);
+        waitForExecutor();
+        verify(watch).close();
+        assertEquals(0, idleDatabase.getNumObservers());
+
+        idleDatabase.subscribe(Collections.emptyMap(), sub1);
+        verify(mapOp, times(2)).watch(any());
+        idleDatabase.close();
+    }
+
+    @Test
+    public void testObserverReusedWithinIdleTimeout() throws Exception {
+        Watch watch = mock(Watch.class);
+        when(mapOp.watch(any())).thenReturn(watch);
+        KubernetesResourceDatabase<TestResource> idleDatabase = new KubernetesResourceDatabase<>(client, new TestSubscriptionConfig(), executor, 60000);
+        TestSubscriber sub1 = new TestSubscriber();
+        TestSubscriber sub2 = new TestSubscriber();
+
+        idleDatabase.subscribe(Collections.emptyMap(), sub1);
+        idleDatabase.unsubscribe(Collections.emptyMap(), sub1);
+        idleDatabase.subscribe(Collections.emptyMap(), sub2);
+        verify(mapOp, times(1)).watch(any());
+        verify(watch, never()).close();
+
+        idleDatabase.close();
+        verify(watch).close();
+    }
+
+    @Test
+    public void testObserverRemovedWhenStartFails() throws Exception {
+        Watch watch = mock(Watch.class);
+        when(mapOp.watch(any())).thenThrow(new IllegalStateException("Unable to watch")).thenReturn(watch);
+        KubernetesResourceDatabase<TestResource> failingDatabase = new KubernetesResourceDatabase<>(client, new TestSubscriptionConfig(), executor, 60000);
+        TestSubscriber sub = new TestSubscriber();
+
+        try {
+            failingDatabase.subscribe(Collections.emptyMap(), sub);
+            fail("Expected subscribe to fail");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(0, failingDatabase.getNumObservers());
+
+        failingDatabase.subscribe(Collections.emptyMap(), sub);
+        assertEquals(1, failingDatabase.getNumObservers());
+        verify(mapOp, times(2)).watch(any());
+
+        failingDatabase.unsubscribe(Collections.emptyMap(), sub);
+        failingDatabase.close();
+        verify(watch).close();
+    }
+
+    @Test
+    public void testSharedObserver() throws Exception {
+        KubernetesResourceDatabase<TestResource> sharedDatabase = new KubernetesResourceDatabase<>(client, new TestSubscriptionConfig() {
+            @Override
+            public LabelSet getObserverKey(Map<String, String> filter) {
+                return LabelSet.fromMap(Collections.emptyMap());
+            }
+        });
+        TestSubscriber sub1 = new TestSubscriber();
+        TestSubscriber sub2 = new TestSubscriber();
+
+        sharedDatabase.subscribe(Collections.singletonMap("address", "a1"), sub1);
+        sharedDatabase.subscribe(Collections.singletonMap("address", "a2"), sub2);
+        assertEquals(1, sharedDatabase.getNumObservers());
+
+        Watcher listener = getListener();
+        listener.eventReceived(Watcher.Action.ADDED, createResource("r1"));
+        assertValue(sub1.lastValue, "val");
+        assertValue(sub2.lastValue, "val");
+        sharedDatabase.close();
+    }
+
     private static void assertValue(Message message, String ... values) {
         AmqpSequence seq = (AmqpSequence) message.getBody();
         Set<String> expected = new LinkedHashSet<>(Arrays.asList(values));
@@ -29,7 +29,11 @@ import org.mockito.runners.MockitoJUnitRunner;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
@@ -41,6 +45,19 @@ public class SubscriptionManagerTest {
     @Captor
     private ArgumentCaptor<Message> messageCaptor;
 
+    @Test
+    public void testUnsubscribe() {
+        MessageEncoder<TestResource> encoder = set -> Message.Factory.create();
+        SubscriptionManager<TestResource> manager = new SubscriptionManager<>(encoder, resource -> true);
+        Subscriber mockSub = mock(Subscriber.class);
+        manager.subscribe(mockSub);
+
+        assertThat(manager.unsubscribe(mockSub), is(true));
+        assertThat(manager.unsubscribe(mockSub), is(false));
+        manager.resourcesUpdated(Collections.singleton(new TestResource("t1", Collections.singletonMap("key1", "value1"), "v1")));
+        verifyZeroInteractions(mockSub);
+    }
+
     @Test
     public void testSubscribing() throws IOException {
         MessageEncoder<TestResource> encoder = set -> {
@@ -72,4 +89,82 @@ public class SubscriptionManagerTest {
         listener.resourcesUpdated(new HashSet<>(Arrays.asList(new TestResource("t2", Collections.singletonMap("key1", "value1"), "v2"), new TestResource("t3", Collections.singletonMap("key1", "value1"), "filtered"))));
         verifyZeroInteractions(mockSub);
     }
+
+    @Test
+    public void testVersionedSubscriber() throws IOException {
+        DeltaMessageEncoder<TestResource, String> encoder = new DeltaMessageEncoder<TestResource, String>() {
+            @Override
+            public Message encode(Set<TestResource> set) throws IOException {
+                return encodeSnapshot(encodeEntries(set));
+            }
+
+            @Override
+            public Map<String, String> encodeEntries(Set<TestResource> set) {
+                Map<String, String> entries = new HashMap<>();
+                set.forEach(resource -> entries.put(resource.getName(), resource.getValue()));
+                return entries;
+            }
+
+            @Override
+            public Message encodeSnapshot(Map<String, String> entries) {
+                Message message = Message.Factory.create();
+                message.setBody(new AmqpValue(new HashMap<>(entries)));
+                return message;
+            }
+
+            @Override
+            public Message encodeDelta(Map<String, String> updated, Set<String> removed) {
+                Message message = Message.Factory.create();
+                message.setBody(new AmqpValue(Arrays.asList(new HashMap<>(updated), new HashSet<>(removed))));
+                return message;
+            }
+        };
+        SubscriptionManager<TestResource> manager = new SubscriptionManager<>(encoder, resource -> true);
+        TestResource t1 = new TestResource("t1", Collections.singletonMap("key1", "value1"), "v1");
+        TestResource t2 = new TestResource("t2", Collections.singletonMap("key1", "value1"), "v2");
+        manager.resourcesUpdated(Collections.singleton(t1));
+
+        Subscriber mockSub = mock(Subscriber.class);
+        when(mockSub.isVersioned()).thenReturn(true);
+        manager.subscribe(mockSub);
+        verify(mockSub).resourcesUpdated(messageCaptor.capture());
+        Message snapshot = messageCaptor.getValue();
+        assertThat(snapshot.getApplicationProperties().getValue().get("type"), is("snapshot"));
+        assertThat(snapshot.getApplicationProperties().getValue().get("sequence"), is(1L));
+        assertThat(((AmqpValue) snapshot.getBody()).getValue(), is(Collections.singletonMap("t1", "v1")));
+
+        clearInvocations(mockSub);
+        manager.resourcesUpdated(Collections.singleton(t2));
+        verify(mockSub).resourcesUpdated(messageCaptor.capture());
+        Message delta = messageCaptor.getValue();
+        assertThat(delta.getApplicationProperties().getValue().get("type"), is("delta"));
+        assertThat(delta.getApplicationProperties().getValue().get("sequence"), is(2L));
+        assertThat(((AmqpValue) delta.getBody()).getValue(), is(Arrays.asList(Collections.singletonMap("t2", "v2"), Collections.singleton("t1"))));
+    }
+
+    @Test
+    public void testEncodedOnceForAllSubscribers() throws IOException {
+        AtomicInteger encodeCount = new AtomicInteger();
+        MessageEncoder<TestResource> encoder = set -> {
+            encodeCount.incrementAndGet();
+            Message message = Message.Factory.create();
+            message.setBody(new AmqpValue("test"));
+            return message;
+        };
+        SubscriptionManager<TestResource> manager = new SubscriptionManager<>(encoder, resource -> true);
+        Subscriber sub1 = mock(Subscriber.class);
+        Subscriber sub2 = mock(Subscriber.class);
+        manager.subscribe(sub1);
+        manager.subscribe(sub2);
+        manager.resourcesUpdated(Collections.singleton(new TestResource("t1", Collections.singletonMap("key1", "value1"), "v1")));
+
+        Subscriber lateSub = mock(Subscriber.class);
+        manager.subscribe(lateSub);
+        assertThat(encodeCount.get(), is(1));
+
+        verify(sub1).resourcesUpdated(messageCaptor.capture());
+        Message message = messageCaptor.getValue();
+        verify(sub2).resourcesUpdated(message);
+        verify(lateSub).resourcesUpdated(message);
+    }
 }
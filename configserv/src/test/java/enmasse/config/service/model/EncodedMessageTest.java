@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.config.service.model;
+
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class EncodedMessageTest {
+    @Test
+    public void testEncodedBytesMatchMessage() {
+        Message message = Message.Factory.create();
+        message.setBody(new AmqpValue("test"));
+        message.setContentType("application/json");
+        message.setApplicationProperties(new ApplicationProperties(Collections.singletonMap("sequence", 3L)));
+        EncodedMessage encoded = EncodedMessage.of(message);
+
+        byte[] buffer = new byte[encoded.getEncodedSize()];
+        assertThat(encoded.encode(buffer, 0, buffer.length), is(encoded.getEncodedSize()));
+
+        Message decoded = Message.Factory.create();
+        decoded.decode(buffer, 0, buffer.length);
+        assertThat(((AmqpValue) decoded.getBody()).getValue(), is("test"));
+        assertThat(decoded.getContentType(), is("application/json"));
+        assertThat(decoded.getApplicationProperties().getValue().get("sequence"), is(3L));
+
+        try {
+            encoded.encode(new byte[1], 0, 1);
+            fail("Expected encoding into a too small buffer to fail");
+        } catch (BufferOverflowException e) {
+            // Expected, so that the sender retries with a larger buffer
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler.benchmark;
+
+import enmasse.queue.scheduler.Broker;
+import enmasse.queue.scheduler.BrokerLoad;
+import enmasse.queue.scheduler.Histogram;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Broker keeping its queues in memory, completing every operation immediately.
+ */
+public class InMemoryBroker implements Broker {
+    private static final CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
+    private final Set<String> queues = new HashSet<>();
+    private final Histogram roundTripTimes = Histogram.latency();
+
+    @Override
+    public CompletionStage<Void> deployQueue(String address) {
+        queues.add(address);
+        return COMPLETED;
+    }
+
+    @Override
+    public CompletionStage<Void> deleteQueue(String address) {
+        queues.remove(address);
+        return COMPLETED;
+    }
+
+    @Override
+    public Set<String> getQueueNames() {
+        return Collections.unmodifiableSet(queues);
+    }
+
+    @Override
+    public CompletionStage<Long> getMessageCount(String address) {
+        return CompletableFuture.completedFuture(0L);
+    }
+
+    @Override
+    public long getNumQueues() {
+        return queues.size();
+    }
+
+    @Override
+    public BrokerLoad getLoad() {
+        return BrokerLoad.EMPTY;
+    }
+
+    @Override
+    public Histogram getManagementRoundTripTimes() {
+        return roundTripTimes;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler.benchmark;
+
+import enmasse.queue.scheduler.AddressChange;
+import enmasse.queue.scheduler.Broker;
+import enmasse.queue.scheduler.GroupState;
+import enmasse.queue.scheduler.LeastQueuesPlacement;
+import enmasse.queue.scheduler.PlacementStrategy;
+import enmasse.queue.scheduler.RendezvousHashPlacement;
+import enmasse.queue.scheduler.SchedulerState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the cost of applying address and broker changes to the scheduler state of a single shared group.
+ * Brokers are kept in memory and group operations run on the calling thread, so only the cost of the scheduler
+ * itself is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchedulerStateBenchmark {
+    private static final String GROUP_ID = "group";
+    private static final String EXTRA_BROKER_ID = "broker-extra";
+    private static final GroupState.MoveLimiter UNLIMITED_MOVES = new GroupState.MoveLimiter() {
+        @Override
+        public boolean tryStartMove() {
+            return true;
+        }
+
+        @Override
+        public void moveCompleted() {
+        }
+    };
+
+    @State(Scope.Benchmark)
+    public static class Group {
+        @Param({"1000", "10000", "100000"})
+        public int numAddresses;
+
+        @Param({"1", "20", "200"})
+        public int numBrokers;
+
+        @Param({"least-queues", "rendezvous"})
+        public String placement;
+
+        SchedulerState state;
+        Map<String, InMemoryBroker> brokers;
+        Set<String> addresses;
+
+        void createState() {
+            PlacementStrategy strategy;
+            switch (placement) {
+                case "least-queues":
+                    strategy = new LeastQueuesPlacement();
+                    break;
+                case "rendezvous":
+                    strategy = new RendezvousHashPlacement();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown placement " + placement);
+            }
+
+            state = new SchedulerState(Runnable::run, strategy);
+            brokers = new LinkedHashMap<>();
+            for (int i = 0; i < numBrokers; i++) {
+                brokers.put("broker" + i, new InMemoryBroker());
+            }
+            state.brokersAdded(GROUP_ID, new LinkedHashMap<String, Broker>(brokers)).toCompletableFuture().join();
+        }
+
+        void createAddresses() {
+            addresses = new HashSet<>();
+            for (int i = 0; i < numAddresses; i++) {
+                addresses.add("queue" + i);
+            }
+        }
+
+        void populate() {
+            state.addressesChanged(Collections.singletonMap(GROUP_ID, AddressChange.added(addresses))).toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * A group with brokers but no addresses, recreated for every invocation.
+     */
+    public static class EmptyGroup extends Group {
+        Map<String, AddressChange> addAll;
+
+        @Setup(Level.Trial)
+        public void setupTrial() {
+            createAddresses();
+            addAll = Collections.singletonMap(GROUP_ID, AddressChange.added(addresses));
+        }
+
+        @Setup(Level.Invocation)
+        public void setupInvocation() {
+            createState();
+        }
+    }
+
+    /**
+     * A group with all addresses placed.
+     */
+    public static class PopulatedGroup extends Group {
+        int nextAddress;
+
+        @Setup(Level.Trial)
+        public void setupTrial() {
+            createState();
+            createAddresses();
+            populate();
+            nextAddress = numAddresses;
+        }
+    }
+
+    /**
+     * A group with all addresses placed, without the extra broker at the start of every invocation.
+     */
+    public static class WithoutExtraBroker extends PopulatedGroup {
+        @Setup(Level.Invocation)
+        public void removeExtraBroker() {
+            state.brokerRemoved(GROUP_ID, EXTRA_BROKER_ID).toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * A group with all addresses placed, where the extra broker holds its share of the addresses at the start of
+     * every invocation. The share is moved to the extra broker by rebalancing the group, so that the scheduler knows
+     * which queues the broker holds.
+     */
+    public static class WithExtraBroker extends PopulatedGroup {
+        @Setup(Level.Invocation)
+        public void addExtraBroker() {
+            InMemoryBroker extra = new InMemoryBroker();
+            state.brokerAdded(GROUP_ID, EXTRA_BROKER_ID, extra).toCompletableFuture().join();
+            state.rebalance(GROUP_ID, UNLIMITED_MOVES).toCompletableFuture().join();
+            // Apply the deletes of the drained source queues to the index before measuring
+            state.checkBrokers().toCompletableFuture().join();
+            if (extra.getNumQueues() == 0) {
+                throw new IllegalStateException("Extra broker was not given any queues");
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void checkQueuesPlacedAgain() {
+            long placed = 0;
+            for (InMemoryBroker broker : brokers.values()) {
+                placed += broker.getNumQueues();
+            }
+            if (placed != numAddresses) {
+                throw new IllegalStateException("Only " + placed + " of " + numAddresses + " queues placed after removing the extra broker");
+            }
+        }
+    }
+
+    /**
+     * Place all addresses of a group on its brokers.
+     */
+    @Benchmark
+    public void addressesAdded(EmptyGroup group) {
+        group.state.addressesChanged(group.addAll).toCompletableFuture().join();
+    }
+
+    /**
+     * Add one address to, and remove another from, a group with all addresses placed.
+     */
+    @Benchmark
+    public void addressesChanged(PopulatedGroup group) {
+        String added = "queue" + group.nextAddress;
+        String removed = "queue" + (group.nextAddress - group.numAddresses);
+        group.nextAddress++;
+        AddressChange change = AddressChange.of(Collections.singleton(added), Collections.singleton(removed));
+        group.state.addressesChanged(Collections.singletonMap(GROUP_ID, change)).toCompletableFuture().join();
+    }
+
+    /**
+     * Add a broker to a group with all addresses placed.
+     */
+    @Benchmark
+    public void brokerAdded(WithoutExtraBroker group) {
+        group.state.brokerAdded(GROUP_ID, EXTRA_BROKER_ID, new InMemoryBroker()).toCompletableFuture().join();
+    }
+
+    /**
+     * Remove a broker holding its share of the addresses, placing them on the remaining brokers.
+     */
+    @Benchmark
+    public void brokerRemoved(WithExtraBroker group) {
+        group.state.brokerRemoved(GROUP_ID, EXTRA_BROKER_ID).toCompletableFuture().join();
+    }
+}
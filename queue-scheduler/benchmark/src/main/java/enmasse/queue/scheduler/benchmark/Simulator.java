@@ -0,0 +1,304 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler.benchmark;
+
+import enmasse.queue.scheduler.AddressChange;
+import enmasse.queue.scheduler.Broker;
+import enmasse.queue.scheduler.GroupState;
+import enmasse.queue.scheduler.Histogram;
+import enmasse.queue.scheduler.LeastQueuesPlacement;
+import enmasse.queue.scheduler.PlacementStrategy;
+import enmasse.queue.scheduler.RendezvousHashPlacement;
+import enmasse.queue.scheduler.SchedulerState;
+import enmasse.queue.scheduler.TimedPlacement;
+import enmasse.queue.scheduler.TraceEvent;
+import enmasse.queue.scheduler.WeightedLoadPlacement;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a trace recorded by the scheduler against placement strategies, and reports for each strategy how evenly
+ * queues were spread, how many queues were moved and how long placement decisions took. Brokers are kept in memory
+ * and the trace is replayed as fast as possible, unless a speedup relative to the recorded time is given.
+ *
+ * <p>Usage: {@code Simulator <trace file> [strategy,...] [speedup] [rebalance interval ms]}
+ */
+public class Simulator {
+    private static final String[] ALL_STRATEGIES = {"least-queues", "rendezvous", "load"};
+    private static final long[] DECISION_BOUNDS_NANOS = {100, 200, 500, 1_000, 2_000, 5_000, 10_000, 20_000, 50_000,
+            100_000, 200_000, 500_000, 1_000_000, 10_000_000};
+
+    private final List<TraceEvent> events;
+    private final double speedup;
+    private final long rebalanceInterval;
+
+    /**
+     * @param speedup How many times faster than recorded to replay the trace, or 0 to replay as fast as possible.
+     * @param rebalanceInterval The interval in trace time at which groups are rebalanced, or 0 to not rebalance.
+     */
+    public Simulator(List<TraceEvent> events, double speedup, long rebalanceInterval) {
+        this.events = events;
+        this.speedup = speedup;
+        this.rebalanceInterval = rebalanceInterval;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: Simulator <trace file> [strategy,...] [speedup] [rebalance interval ms]");
+            System.exit(1);
+        }
+        String[] strategies = args.length > 1 ? args[1].split(",") : ALL_STRATEGIES;
+        double speedup = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+        long rebalanceInterval = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        Simulator simulator = new Simulator(readTrace(args[0]), speedup, rebalanceInterval);
+        System.out.println(String.format("%-14s %8s %10s %10s %8s %10s %10s %10s %10s",
+                "strategy", "events", "skew", "max skew", "moves", "decisions", "p50 (ns)", "p99 (ns)", "time (ms)"));
+        for (String strategy : strategies) {
+            Result result = simulator.replay(createStrategy(strategy));
+            System.out.println(String.format("%-14s %8d %10d %10d %8d %10d %10s %10s %10d",
+                    strategy, result.events, result.finalSkew, result.maxSkew, result.moves,
+                    result.decisions.getCount(), formatQuantile(result.decisions, 0.5),
+                    formatQuantile(result.decisions, 0.99), result.elapsedMillis));
+        }
+    }
+
+    public static List<TraceEvent> readTrace(String file) throws IOException {
+        List<TraceEvent> events = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    events.add(TraceEvent.decode(line));
+                }
+            }
+        }
+        return events;
+    }
+
+    private static PlacementStrategy createStrategy(String name) {
+        switch (name) {
+            case "least-queues":
+                return new LeastQueuesPlacement();
+            case "rendezvous":
+                return new RendezvousHashPlacement();
+            case "load":
+                return new WeightedLoadPlacement();
+            default:
+                throw new IllegalArgumentException("Unknown placement strategy " + name);
+        }
+    }
+
+    private static String formatQuantile(Histogram.Snapshot snapshot, double quantile) {
+        long value = snapshot.getQuantile(quantile);
+        return value < 0 ? ">" + DECISION_BOUNDS_NANOS[DECISION_BOUNDS_NANOS.length - 1] : String.valueOf(value);
+    }
+
+    public Result replay(PlacementStrategy strategy) throws InterruptedException {
+        Histogram decisions = new Histogram(DECISION_BOUNDS_NANOS);
+        Replay replay = new Replay(new SchedulerState(Runnable::run, new TimedPlacement(strategy, decisions, TimeUnit.NANOSECONDS)));
+        long start = System.currentTimeMillis();
+        long previousTime = 0;
+        long nextRebalance = rebalanceInterval;
+        long maxSkew = 0;
+        for (TraceEvent event : events) {
+            if (speedup > 0 && event.getTime() > previousTime) {
+                Thread.sleep((long) ((event.getTime() - previousTime) / speedup));
+            }
+            previousTime = event.getTime();
+            while (rebalanceInterval > 0 && nextRebalance <= event.getTime()) {
+                replay.rebalance();
+                nextRebalance += rebalanceInterval;
+            }
+            replay.apply(event);
+            maxSkew = Math.max(maxSkew, replay.skew());
+        }
+        return new Result(events.size(), replay.skew(), maxSkew, replay.moves, decisions.snapshot(),
+                System.currentTimeMillis() - start);
+    }
+
+    public static class Result {
+        public final int events;
+        public final long finalSkew;
+        public final long maxSkew;
+        public final long moves;
+        public final Histogram.Snapshot decisions;
+        public final long elapsedMillis;
+
+        Result(int events, long finalSkew, long maxSkew, long moves, Histogram.Snapshot decisions, long elapsedMillis) {
+            this.events = events;
+            this.finalSkew = finalSkew;
+            this.maxSkew = maxSkew;
+            this.moves = moves;
+            this.decisions = decisions;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    /**
+     * The state of a single replay. A move is counted when a queue is deleted while its address is still configured
+     * for the group, or when a queue lost with a detached broker is deployed again.
+     */
+    private static class Replay implements GroupState.MoveLimiter {
+        private final SchedulerState state;
+        private final Map<String, Set<String>> configured = new HashMap<>();
+        private final Map<String, Map<String, SimulatedBroker>> brokers = new HashMap<>();
+        private final Map<String, Map<String, Integer>> lost = new HashMap<>();
+        private long moves = 0;
+
+        Replay(SchedulerState state) {
+            this.state = state;
+        }
+
+        void apply(TraceEvent event) {
+            String groupId = event.getGroupId();
+            switch (event.getType()) {
+                case ADDRESSES_CHANGED:
+                    AddressChange change = event.getChange();
+                    Set<String> addresses = configured.computeIfAbsent(groupId, id -> new HashSet<>());
+                    Map<String, Integer> groupLost = lost.computeIfAbsent(groupId, id -> new HashMap<>());
+                    if (change.isReset()) {
+                        addresses.clear();
+                        groupLost.clear();
+                    }
+                    addresses.removeAll(change.getRemoved());
+                    groupLost.keySet().removeAll(change.getRemoved());
+                    addresses.addAll(change.getAdded());
+                    join(state.addressesChanged(Collections.singletonMap(groupId, change)));
+                    break;
+                case BROKERS_ADDED:
+                    Map<String, Broker> added = new LinkedHashMap<>();
+                    Map<String, SimulatedBroker> groupBrokers = brokers.computeIfAbsent(groupId, id -> new LinkedHashMap<>());
+                    event.getBrokers().forEach((brokerId, queues) -> {
+                        SimulatedBroker broker = new SimulatedBroker(this, groupId, queues);
+                        groupBrokers.put(brokerId, broker);
+                        added.put(brokerId, broker);
+                    });
+                    join(state.brokersAdded(groupId, added));
+                    break;
+                case BROKER_REMOVED:
+                    for (String brokerId : event.getBrokers().keySet()) {
+                        SimulatedBroker broker = brokers.getOrDefault(groupId, Collections.emptyMap()).remove(brokerId);
+                        if (broker != null) {
+                            Set<String> groupAddresses = configured.getOrDefault(groupId, Collections.emptySet());
+                            for (String queue : broker.getQueueNames()) {
+                                if (groupAddresses.contains(queue)) {
+                                    lost.computeIfAbsent(groupId, id -> new HashMap<>()).merge(queue, 1, Integer::sum);
+                                }
+                            }
+                        }
+                        join(state.brokerRemoved(groupId, brokerId));
+                    }
+                    break;
+            }
+        }
+
+        void rebalance() {
+            for (String groupId : state.getGroupIds()) {
+                join(state.rebalance(groupId, this));
+            }
+        }
+
+        /**
+         * The largest difference in the number of queues between two brokers of the same group.
+         */
+        long skew() {
+            long skew = 0;
+            for (Map<String, SimulatedBroker> groupBrokers : brokers.values()) {
+                long min = Long.MAX_VALUE;
+                long max = 0;
+                for (SimulatedBroker broker : groupBrokers.values()) {
+                    min = Math.min(min, broker.getNumQueues());
+                    max = Math.max(max, broker.getNumQueues());
+                }
+                if (groupBrokers.size() > 1) {
+                    skew = Math.max(skew, max - min);
+                }
+            }
+            return skew;
+        }
+
+        void deployed(String groupId, String address) {
+            Map<String, Integer> groupLost = lost.get(groupId);
+            if (groupLost != null && groupLost.containsKey(address)) {
+                moves++;
+                groupLost.computeIfPresent(address, (a, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+
+        void deleted(String groupId, String address) {
+            if (configured.getOrDefault(groupId, Collections.emptySet()).contains(address)) {
+                moves++;
+            }
+        }
+
+        @Override
+        public boolean tryStartMove() {
+            return true;
+        }
+
+        @Override
+        public void moveCompleted() {
+        }
+
+        private static void join(CompletionStage<Void> stage) {
+            stage.toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * In-memory broker reporting its queue operations to the replay.
+     */
+    private static class SimulatedBroker extends InMemoryBroker {
+        private final Replay replay;
+        private final String groupId;
+
+        SimulatedBroker(Replay replay, String groupId, Set<String> queues) {
+            this.replay = replay;
+            this.groupId = groupId;
+            for (String queue : queues) {
+                super.deployQueue(queue);
+            }
+        }
+
+        @Override
+        public CompletionStage<Void> deployQueue(String address) {
+            replay.deployed(groupId, address);
+            return super.deployQueue(address);
+        }
+
+        @Override
+        public CompletionStage<Void> deleteQueue(String address) {
+            replay.deleted(groupId, address);
+            return super.deleteQueue(address);
+        }
+    }
+}
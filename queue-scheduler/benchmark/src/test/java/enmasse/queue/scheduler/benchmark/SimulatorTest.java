@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler.benchmark;
+
+import enmasse.queue.scheduler.AddressChange;
+import enmasse.queue.scheduler.LeastQueuesPlacement;
+import enmasse.queue.scheduler.TraceEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SimulatorTest {
+    private Path traceFile;
+
+    @Before
+    public void setup() throws Exception {
+        Map<String, Set<String>> brokers = new LinkedHashMap<>();
+        brokers.put("br1", Collections.emptySet());
+        brokers.put("br2", Collections.emptySet());
+        Set<String> addresses = new LinkedHashSet<>(Arrays.asList("queue1", "queue2", "queue3", "queue4"));
+
+        List<String> lines = new ArrayList<>();
+        lines.add(TraceEvent.brokersAdded(0, "group1", brokers).encode());
+        lines.add(TraceEvent.addressesChanged(10, "group1", AddressChange.added(addresses)).encode());
+        lines.add(TraceEvent.brokerRemoved(20, "group1", "br1").encode());
+        lines.add(TraceEvent.brokersAdded(30, "group1", Collections.singletonMap("br3", Collections.emptySet())).encode());
+        lines.add(TraceEvent.addressesChanged(50, "group1", AddressChange.added(Collections.singleton("queue5"))).encode());
+        traceFile = Files.createTempFile("scheduler", ".trace");
+        Files.write(traceFile, lines, StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        Files.deleteIfExists(traceFile);
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        Simulator simulator = new Simulator(Simulator.readTrace(traceFile.toString()), 0, 0);
+        Simulator.Result result = simulator.replay(new LeastQueuesPlacement());
+
+        assertThat(result.events, is(5));
+        // The queues of br1 are deployed again on br2, and br3 only receives the address added last
+        assertThat(result.moves, is(2L));
+        assertThat(result.maxSkew, is(4L));
+        assertThat(result.finalSkew, is(3L));
+    }
+
+    @Test
+    public void testReplayWithRebalance() throws Exception {
+        Simulator simulator = new Simulator(Simulator.readTrace(traceFile.toString()), 0, 45);
+        Simulator.Result result = simulator.replay(new LeastQueuesPlacement());
+
+        assertThat(result.events, is(5));
+        assertThat(result.moves, is(4L));
+        assertThat(result.maxSkew, is(4L));
+        assertThat(result.finalSkew, is(1L));
+    }
+}
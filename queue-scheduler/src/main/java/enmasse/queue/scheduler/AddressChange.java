@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A change to the addresses of a group. A change may reset the group, in which case the addresses previously known
+ * for the group are forgotten, without deleting them, before the added addresses are applied. A removed group is
+ * represented as a reset without any added addresses. A change may also set the replication factor of addresses,
+ * where a factor of 0 restores the default.
+ */
+public final class AddressChange {
+    private final boolean reset;
+    private final Set<String> added;
+    private final Set<String> removed;
+    private final Map<String, Integer> replicas;
+
+    private AddressChange(boolean reset, Set<String> added, Set<String> removed, Map<String, Integer> replicas) {
+        this.reset = reset;
+        this.added = Collections.unmodifiableSet(added);
+        this.removed = Collections.unmodifiableSet(removed);
+        this.replicas = Collections.unmodifiableMap(replicas);
+    }
+
+    public static AddressChange of(Set<String> added, Set<String> removed) {
+        return of(added, removed, Collections.emptyMap());
+    }
+
+    public static AddressChange of(Set<String> added, Set<String> removed, Map<String, Integer> replicas) {
+        return new AddressChange(false, added, removed, replicas);
+    }
+
+    public static AddressChange added(Set<String> added) {
+        return of(added, Collections.emptySet());
+    }
+
+    public static AddressChange removed(Set<String> removed) {
+        return of(Collections.emptySet(), removed);
+    }
+
+    public static AddressChange groupRemoved() {
+        return new AddressChange(true, Collections.emptySet(), Collections.emptySet(), Collections.emptyMap());
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public Set<String> getAdded() {
+        return added;
+    }
+
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * The replication factor set for addresses, by address.
+     */
+    public Map<String, Integer> getReplicas() {
+        return replicas;
+    }
+
+    public boolean isEmpty() {
+        return !reset && added.isEmpty() && removed.isEmpty() && replicas.isEmpty();
+    }
+
+    /**
+     * Merge this change with a later change, giving a change with the same effect as applying both in order.
+     */
+    public AddressChange merge(AddressChange later) {
+        if (later.reset) {
+            return later;
+        }
+
+        Set<String> mergedAdded = new LinkedHashSet<>(added);
+        mergedAdded.removeAll(later.removed);
+        for (String address : later.added) {
+            if (reset || !removed.contains(address)) {
+                mergedAdded.add(address);
+            }
+        }
+
+        Map<String, Integer> mergedReplicas = new HashMap<>(replicas);
+        mergedReplicas.keySet().removeAll(later.removed);
+        mergedReplicas.putAll(later.replicas);
+
+        if (reset) {
+            return new AddressChange(true, mergedAdded, Collections.emptySet(), mergedReplicas);
+        }
+
+        Set<String> mergedRemoved = new LinkedHashSet<>(removed);
+        mergedRemoved.removeAll(later.added);
+        for (String address : later.removed) {
+            if (!added.contains(address)) {
+                mergedRemoved.add(address);
+            }
+        }
+        return new AddressChange(false, mergedAdded, mergedRemoved, mergedReplicas);
+    }
+
+    @Override
+    public String toString() {
+        return "{reset=" + reset + ",added=" + added.size() + ",removed=" + removed.size() + ",replicas=" + replicas.size() + "}";
+    }
+}
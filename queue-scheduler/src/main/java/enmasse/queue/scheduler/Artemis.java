@@ -17,74 +17,276 @@
 package enmasse.queue.scheduler;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.vertx.core.Vertx;
-import io.vertx.proton.*;
+import io.vertx.proton.ProtonConnection;
+import io.vertx.proton.ProtonHelper;
+import io.vertx.proton.ProtonReceiver;
 import org.apache.qpid.proton.amqp.messaging.AmqpValue;
 import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
-import org.apache.qpid.proton.amqp.messaging.Source;
 import org.apache.qpid.proton.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 /**
- * Represents an Artemis broker that may be managed
+ * Represents an Artemis broker that may be managed. The set of queues on the broker is kept in memory and updated
+ * as queues are deployed and deleted, and from the binding notifications sent by the broker. The set is reconciled
+ * with the queues actually present on the broker periodically, and less often while notifications are received.
  */
 public class Artemis implements Broker {
     private static final Logger log = LoggerFactory.getLogger(Artemis.class.getName());
     private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String NOTIFICATION_ADDRESS = "activemq.notifications";
     private final Vertx vertx;
-    private final ProtonSender sender;
-    private final String replyTo;
-    private final BlockingQueue<Message> replies;
+    private final ManagementClient client;
+    private final Set<String> queues = ConcurrentHashMap.newKeySet();
+    private volatile Set<String> touchedDuringReconcile;
+    private CompletableFuture<Void> reconcileInProgress;
+    private volatile BrokerLoad load = BrokerLoad.EMPTY;
+    // Queues created by the broker for internal addresses, such as our own notification subscription
+    private final Set<String> internalQueues = ConcurrentHashMap.newKeySet();
+    private volatile boolean notificationsActive = false;
+    private volatile long lastReconciled = 0;
     private final String messagingHost = System.getenv("MESSAGING_SERVICE_HOST");
     private final String messagingPort = System.getenv("MESSAGING_SERVICE_PORT_INTERNAL");
 
-    public Artemis(Vertx vertx, ProtonSender sender, String replyTo, BlockingQueue<Message> replies) {
+    public Artemis(Vertx vertx, ManagementClient client) {
         this.vertx = vertx;
-        this.sender = sender;
-        this.replyTo = replyTo;
-        this.replies = replies;
-    }
-
-    public static Future<Broker> create(Vertx vertx, ProtonConnection connection) {
-        CompletableFuture<Broker> promise = new CompletableFuture<>();
-        connection.sessionOpenHandler(ProtonSession::open);
-        BlockingQueue<Message> replies = new LinkedBlockingDeque<>();
-        ProtonSender sender = connection.createSender("activemq.management");
-        sender.openHandler(result -> {
-            ProtonReceiver receiver = connection.createReceiver("activemq.management");
-            Source source = new Source();
-            source.setDynamic(true);
-            receiver.setSource(source);
-            receiver.openHandler(h -> {
-                promise.complete(new Artemis(vertx, sender, h.result().getRemoteSource().getAddress(), replies));
+        this.client = client;
+    }
+
+    public static CompletionStage<Broker> create(Vertx vertx, ProtonConnection connection) {
+        return create(vertx, connection, ArtemisOptions.defaults());
+    }
+
+    public static CompletionStage<Broker> create(Vertx vertx, ProtonConnection connection, ArtemisOptions options) {
+        return ManagementClient.create(vertx, connection, options).thenCompose(client -> {
+            Artemis artemis = new Artemis(vertx, client);
+            // Subscribe before the initial reconcile, so that no change is missed in between
+            return artemis.subscribeNotifications(connection, options.requestTimeout())
+                    .thenCompose(v -> artemis.reconcileQueues())
+                    .thenApply(v -> {
+                        artemis.schedulePeriodic(options.reconcileInterval(),
+                                () -> artemis.reconcileIfStale(options.notificationReconcileInterval()),
+                                "Error reconciling queues");
+                        artemis.schedulePeriodic(options.loadSampleInterval(), artemis::sampleLoad, "Error sampling broker load");
+                        return (Broker) artemis;
+                    });
+        });
+    }
+
+    /**
+     * Subscribe to the notification address of the broker. If the subscription cannot be made, the queues are only
+     * kept up to date by reconciling.
+     */
+    private CompletionStage<Void> subscribeNotifications(ProtonConnection connection, long timeout) {
+        CompletableFuture<Void> promise = new CompletableFuture<>();
+        vertx.setTimer(timeout, id -> promise.complete(null));
+        ProtonReceiver receiver = connection.createReceiver(NOTIFICATION_ADDRESS);
+        receiver.openHandler(h -> {
+            if (h.succeeded()) {
+                notificationsActive = true;
+            } else {
+                log.warn("Unable to subscribe to broker notifications, falling back to polling", h.cause());
+            }
+            promise.complete(null);
+        });
+        receiver.closeHandler(h -> {
+            if (notificationsActive) {
+                log.warn("Broker notification link closed, falling back to polling");
+            }
+            notificationsActive = false;
+            promise.complete(null);
+        });
+        receiver.handler((protonDelivery, message) -> {
+            ProtonHelper.accepted(protonDelivery, true);
+            notificationReceived(message);
+        });
+        receiver.open();
+        return promise;
+    }
+
+    void notificationReceived(Message message) {
+        if (message.getApplicationProperties() == null) {
+            return;
+        }
+        Map<?, ?> properties = message.getApplicationProperties().getValue();
+        Object type = properties.get("_AMQ_NotifType");
+        Object routingName = properties.get("_AMQ_RoutingName");
+        Object address = properties.get("_AMQ_Address");
+        if (type == null || routingName == null) {
+            return;
+        }
+
+        String queue = routingName.toString();
+        boolean internal = address != null && (address.toString().startsWith("activemq.") || address.toString().equals(client.getReplyTo()));
+        switch (type.toString()) {
+            case "BINDING_ADDED":
+                if (internal) {
+                    // The queue may already have been picked up by a reconcile that raced with this notification
+                    internalQueues.add(queue);
+                    queues.remove(queue);
+                } else {
+                    markTouched(queue);
+                    if (queues.add(queue)) {
+                        log.debug("Queue " + queue + " added on broker");
+                    }
+                }
+                break;
+            case "BINDING_REMOVED":
+                if (internal) {
+                    internalQueues.remove(queue);
+                } else {
+                    markTouched(queue);
+                    if (queues.remove(queue)) {
+                        log.debug("Queue " + queue + " removed on broker");
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private CompletionStage<Void> reconcileIfStale(long notificationReconcileInterval) {
+        if (notificationsActive && System.currentTimeMillis() - lastReconciled < notificationReconcileInterval) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return reconcileQueues();
+    }
+
+    private void schedulePeriodic(long interval, Supplier<CompletionStage<?>> task, String errorMessage) {
+        vertx.setPeriodic(interval, id -> {
+            if (!client.isOpen()) {
+                vertx.cancelTimer(id);
+                return;
+            }
+            task.get().whenComplete((v, cause) -> {
+                if (cause != null) {
+                    log.warn(errorMessage, cause);
+                }
             });
-            receiver.handler(((protonDelivery, message) -> {
-                try {
-                    replies.put(message);
-                    ProtonHelper.accepted(protonDelivery, true);
-                } catch (Exception e) {
-                    ProtonHelper.rejected(protonDelivery, true);
+        });
+    }
+
+    /**
+     * Sample the load of the broker. Attributes that could not be read keep their previously sampled value.
+     */
+    public CompletionStage<BrokerLoad> sampleLoad() {
+        BrokerLoad previous = load;
+        CompletableFuture<Long> messageCount = readAttribute("totalMessageCount", previous.getMessageCount());
+        CompletableFuture<Long> consumerCount = readAttribute("totalConsumerCount", previous.getConsumerCount());
+        CompletableFuture<Long> addressMemoryUsage = readAttribute("addressMemoryUsage", previous.getAddressMemoryUsage());
+        return CompletableFuture.allOf(messageCount, consumerCount, addressMemoryUsage).thenApply(v -> {
+            BrokerLoad sampled = new BrokerLoad(messageCount.join(), consumerCount.join(), addressMemoryUsage.join());
+            load = sampled;
+            return sampled;
+        });
+    }
+
+    private CompletableFuture<Long> readAttribute(String attribute, long fallback) {
+        return requestAttribute("broker", attribute).exceptionally(cause -> {
+            log.debug("Unable to read attribute " + attribute, cause);
+            return fallback;
+        });
+    }
+
+    @Override
+    public CompletionStage<Long> getMessageCount(String address) {
+        return requestAttribute("queue." + address, "messageCount");
+    }
+
+    private CompletableFuture<Long> requestAttribute(String resource, String attribute) {
+        Message message = Message.Factory.create();
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("_AMQ_ResourceName", resource);
+        properties.put("_AMQ_Attribute", attribute);
+        properties.put("JMSReplyTo", client.getReplyTo());
+        message.setApplicationProperties(new ApplicationProperties(properties));
+        message.setBody(new AmqpValue("[]"));
+
+        return client.request(message).thenApply(response -> {
+            AmqpValue value = (AmqpValue) response.getBody();
+            try {
+                ArrayNode root = (ArrayNode) mapper.readTree((String) value.getValue());
+                JsonNode result = root.get(0);
+                if (result == null || !result.canConvertToLong()) {
+                    throw new IllegalStateException("Unexpected value of " + attribute + " of " + resource + ": " + root);
                 }
-            }));
-            receiver.open();
+                return result.asLong();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
         });
-        sender.open();
-        return promise;
     }
 
     @Override
-    public void deployQueue(String address) {
+    public BrokerLoad getLoad() {
+        return load;
+    }
+
+    @Override
+    public Histogram getManagementRoundTripTimes() {
+        return client.getRoundTripTimes();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return client.isAvailable();
+    }
+
+    /**
+     * Replace the in-memory queue set with the queues reported by the broker. Queues deployed or deleted while the
+     * broker is being queried are left as they are. Only one reconciliation runs at a time.
+     */
+    public synchronized CompletionStage<Void> reconcileQueues() {
+        if (reconcileInProgress != null) {
+            return reconcileInProgress;
+        }
+        Set<String> touched = ConcurrentHashMap.newKeySet();
+        touchedDuringReconcile = touched;
+        CompletableFuture<Void> reconcile = fetchQueueNames().thenAccept(actual -> {
+            queues.removeIf(queue -> !actual.contains(queue) && !touched.contains(queue));
+            for (String queue : actual) {
+                if (!touched.contains(queue)) {
+                    queues.add(queue);
+                }
+            }
+            lastReconciled = System.currentTimeMillis();
+        });
+        reconcileInProgress = reconcile;
+        reconcile.whenComplete((v, cause) -> reconcileDone());
+        return reconcile;
+    }
+
+    private synchronized void reconcileDone() {
+        touchedDuringReconcile = null;
+        reconcileInProgress = null;
+    }
+
+    private void markTouched(String address) {
+        Set<String> touched = touchedDuringReconcile;
+        if (touched != null) {
+            touched.add(address);
+        }
+    }
+
+    @Override
+    public CompletionStage<Void> deployQueue(String address) {
+        markTouched(address);
+        boolean existed = !queues.add(address);
         Message message = createMessage("deployQueue");
         ArrayNode parameters = mapper.createArrayNode();
         parameters.add(address);
@@ -93,7 +295,7 @@ public class Artemis implements Broker {
         parameters.add(false);
 
         message.setBody(new AmqpValue(encodeJson(parameters)));
-        doRequest(message);
+        CompletableFuture<Message> queueDeployed = client.request(message);
 
         message = createMessage("createConnectorService");
         parameters = mapper.createArrayNode();
@@ -106,17 +308,20 @@ public class Artemis implements Broker {
         connectorParams.put("groupId", address);
 
         message.setBody(new AmqpValue(encodeJson(parameters)));
-        doRequest(message);
-        log.info("Deployed queue " + address);
-    }
+        // The connector may be left over from an earlier deploy of the queue
+        CompletableFuture<Message> connectorCreated = ignoreRejection(client.request(message), "Unable to create connector for " + address);
 
-    private Message doRequest(Message message) {
-        vertx.runOnContext(h -> sender.send(message));
-        try {
-            return replies.poll(60, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        return CompletableFuture.allOf(queueDeployed, connectorCreated).whenComplete((v, cause) -> {
+            markTouched(address);
+            if (cause != null) {
+                if (!existed) {
+                    queues.remove(address);
+                }
+                log.warn("Error deploying queue " + address, cause);
+            } else {
+                log.info("Deployed queue " + address);
+            }
+        });
     }
 
     private String encodeJson(ArrayNode parameters) {
@@ -128,21 +333,51 @@ public class Artemis implements Broker {
     }
 
     @Override
-    public void deleteQueue(String address) {
+    public CompletionStage<Void> deleteQueue(String address) {
+        markTouched(address);
+        boolean existed = queues.remove(address);
         Message message = createMessage("destroyQueue");
         ArrayNode parameters = mapper.createArrayNode();
         parameters.add(address);
         parameters.add(true);
         message.setBody(new AmqpValue(encodeJson(parameters)));
 
-        doRequest(message);
+        CompletableFuture<Message> queueDestroyed = client.request(message);
 
         message = createMessage("destroyConnectorService");
         parameters = mapper.createArrayNode();
         parameters.add(address);
         message.setBody(new AmqpValue(encodeJson(parameters)));
-        doRequest(message);
-        log.info("Destroyed queue " + address);
+        CompletableFuture<Message> connectorDestroyed = ignoreRejection(client.request(message), "Unable to destroy connector for " + address);
+
+        return CompletableFuture.allOf(queueDestroyed, connectorDestroyed).whenComplete((v, cause) -> {
+            markTouched(address);
+            if (cause != null) {
+                if (existed) {
+                    queues.add(address);
+                }
+                log.warn("Error destroying queue " + address, cause);
+            } else {
+                log.info("Destroyed queue " + address);
+            }
+        });
+    }
+
+    /**
+     * Treat a request rejected by the broker as successful. Requests that got no reply still fail.
+     */
+    private static CompletableFuture<Message> ignoreRejection(CompletableFuture<Message> request, String description) {
+        return request.handle((reply, cause) -> {
+            if (cause == null) {
+                return reply;
+            }
+            Throwable actual = cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+            if (actual instanceof ManagementException) {
+                log.warn(description + ": " + actual.getMessage());
+                return null;
+            }
+            throw new CompletionException(actual);
+        });
     }
 
     private Message createMessage(String operation) {
@@ -150,41 +385,43 @@ public class Artemis implements Broker {
         Map<String, String> properties = new LinkedHashMap<>();
         properties.put("_AMQ_ResourceName", "broker");
         properties.put("_AMQ_OperationName", operation);
-        properties.put("JMSReplyTo", replyTo);
-        message.setReplyTo(replyTo);
+        properties.put("JMSReplyTo", client.getReplyTo());
         message.setApplicationProperties(new ApplicationProperties(properties));
         return message;
     }
 
     @Override
     public long getNumQueues() {
-        return getQueueNames().size();
+        return queues.size();
     }
 
     @Override
     public Set<String> getQueueNames() {
-        Set<String> queues = new LinkedHashSet<>();
+        return Collections.unmodifiableSet(queues);
+    }
+
+    private CompletableFuture<Set<String>> fetchQueueNames() {
         Message message = createMessage("getQueueNames");
         message.setBody(new AmqpValue("[]"));
 
-        // TODO: Make this method less ugly
-        Message response = doRequest(message);
-        if (response == null) {
-            log.warn("Timed out getting response from broker");
-            return queues;
-        }
+        return client.request(message).thenApply(this::decodeQueueNames);
+    }
+
+    private Set<String> decodeQueueNames(Message response) {
+        Set<String> queues = new LinkedHashSet<>();
         AmqpValue value = (AmqpValue) response.getBody();
         try {
             ArrayNode root = (ArrayNode) mapper.readTree((String) value.getValue());
             ArrayNode elements = (ArrayNode) root.get(0);
             for (int i = 0; i < elements.size(); i++) {
                 String queueName = elements.get(i).asText();
-                if (!queueName.equals(replyTo)) {
+                if (!queueName.equals(client.getReplyTo()) && !internalQueues.contains(queueName)) {
                     queues.add(queueName);
                 }
             }
         } catch (IOException e) {
             log.error("Error decoding queue names", e);
+            throw new IllegalStateException(e);
         }
         return queues;
     }
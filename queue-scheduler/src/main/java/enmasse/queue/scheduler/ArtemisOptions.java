@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options for managing Artemis brokers.
+ */
+public final class ArtemisOptions {
+    private static final long DEFAULT_RECONCILE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    private static final long DEFAULT_NOTIFICATION_RECONCILE_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+    private static final long DEFAULT_LOAD_SAMPLE_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    private static final int DEFAULT_MAX_IN_FLIGHT = 32;
+    private static final long DEFAULT_REQUEST_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+    private static final long DEFAULT_MIN_REQUEST_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+    private static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 3;
+    private static final long DEFAULT_CIRCUIT_BREAKER_OPEN_TIME = TimeUnit.SECONDS.toMillis(10);
+
+    private final long reconcileInterval;
+    private final long notificationReconcileInterval;
+    private final long loadSampleInterval;
+    private final int maxInFlight;
+    private final long requestTimeout;
+    private final long minRequestTimeout;
+    private final int circuitBreakerThreshold;
+    private final long circuitBreakerOpenTime;
+
+    public ArtemisOptions(long reconcileInterval, long notificationReconcileInterval, long loadSampleInterval, int maxInFlight, long requestTimeout) {
+        this(reconcileInterval, notificationReconcileInterval, loadSampleInterval, maxInFlight, requestTimeout,
+                DEFAULT_MIN_REQUEST_TIMEOUT, DEFAULT_CIRCUIT_BREAKER_THRESHOLD, DEFAULT_CIRCUIT_BREAKER_OPEN_TIME);
+    }
+
+    public ArtemisOptions(long reconcileInterval, long notificationReconcileInterval, long loadSampleInterval, int maxInFlight, long requestTimeout,
+                          long minRequestTimeout, int circuitBreakerThreshold, long circuitBreakerOpenTime) {
+        this.reconcileInterval = reconcileInterval;
+        this.notificationReconcileInterval = notificationReconcileInterval;
+        this.loadSampleInterval = loadSampleInterval;
+        this.maxInFlight = maxInFlight;
+        this.requestTimeout = requestTimeout;
+        this.minRequestTimeout = minRequestTimeout;
+        this.circuitBreakerThreshold = circuitBreakerThreshold;
+        this.circuitBreakerOpenTime = circuitBreakerOpenTime;
+    }
+
+    public static ArtemisOptions defaults() {
+        return fromEnv(Collections.emptyMap());
+    }
+
+    public static ArtemisOptions fromEnv(Map<String, String> env) {
+        return new ArtemisOptions(
+                getLong(env, "BROKER_RECONCILE_INTERVAL", DEFAULT_RECONCILE_INTERVAL),
+                getLong(env, "BROKER_NOTIFICATION_RECONCILE_INTERVAL", DEFAULT_NOTIFICATION_RECONCILE_INTERVAL),
+                getLong(env, "BROKER_LOAD_SAMPLE_INTERVAL", DEFAULT_LOAD_SAMPLE_INTERVAL),
+                (int) getLong(env, "BROKER_MANAGEMENT_MAX_IN_FLIGHT", DEFAULT_MAX_IN_FLIGHT),
+                getLong(env, "BROKER_MANAGEMENT_TIMEOUT", DEFAULT_REQUEST_TIMEOUT),
+                getLong(env, "BROKER_MANAGEMENT_MIN_TIMEOUT", DEFAULT_MIN_REQUEST_TIMEOUT),
+                (int) getLong(env, "BROKER_CIRCUIT_BREAKER_THRESHOLD", DEFAULT_CIRCUIT_BREAKER_THRESHOLD),
+                getLong(env, "BROKER_CIRCUIT_BREAKER_OPEN_TIME", DEFAULT_CIRCUIT_BREAKER_OPEN_TIME));
+    }
+
+    private static long getLong(Map<String, String> env, String envVar, long defaultValue) {
+        String value = env.get(envVar);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    public long reconcileInterval() {
+        return reconcileInterval;
+    }
+
+    /**
+     * The interval between reconciliations while the broker notifications are received.
+     */
+    public long notificationReconcileInterval() {
+        return notificationReconcileInterval;
+    }
+
+    public long loadSampleInterval() {
+        return loadSampleInterval;
+    }
+
+    public int maxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * The maximum time to wait for the reply to a management request. The actual timeout adapts to the observed
+     * round trip times, and is used as is until the first reply is received.
+     */
+    public long requestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * The lower bound of the adaptive management request timeout.
+     */
+    public long minRequestTimeout() {
+        return minRequestTimeout;
+    }
+
+    /**
+     * The number of consecutive management requests without reply after which the broker is considered unavailable.
+     */
+    public int circuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+
+    /**
+     * The time to wait before probing an unavailable broker again.
+     */
+    public long circuitBreakerOpenTime() {
+        return circuitBreakerOpenTime;
+    }
+}
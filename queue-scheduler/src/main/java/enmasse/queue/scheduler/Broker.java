@@ -17,13 +17,28 @@
 package enmasse.queue.scheduler;
 
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 
 /**
- * Represents a broker that may be assigned multiple addresses
+ * Represents a broker that may be assigned multiple addresses. Queue operations are asynchronous, while the queue
+ * names and counts are read from the locally known state of the broker and reflect operations as soon as they are
+ * issued. A broker that is not available fails its operations right away, and is not given new addresses.
  */
 public interface Broker {
-    void deployQueue(String address);
-    void deleteQueue(String address);
+    CompletionStage<Void> deployQueue(String address);
+    CompletionStage<Void> deleteQueue(String address);
+
+    /**
+     * The queues of the broker, as an unmodifiable view reflecting later operations. Copy it to keep a snapshot.
+     */
     Set<String> getQueueNames();
+
+    /**
+     * Fetch the number of messages held by the queue of an address.
+     */
+    CompletionStage<Long> getMessageCount(String address);
     long getNumQueues();
+    BrokerLoad getLoad();
+    Histogram getManagementRoundTripTimes();
+    boolean isAvailable();
 }
@@ -18,11 +18,11 @@ package enmasse.queue.scheduler;
 
 import io.vertx.proton.ProtonConnection;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Factory for creating broker instances.
  */
 public interface BrokerFactory {
-    Future<Broker> createBroker(ProtonConnection connection);
+    CompletionStage<Broker> createBroker(ProtonConnection connection);
 }
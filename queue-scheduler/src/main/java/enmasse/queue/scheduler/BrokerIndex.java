@@ -0,0 +1,297 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the brokers of a group and the queues placed on them. The index is updated as queues are deployed and
+ * deleted, and keeps the brokers bucketed by their number of queues, so that the least loaded broker and the brokers
+ * holding an address can be found without querying the brokers. Since a deploy or delete changes the number of queues
+ * of a broker by one, a broker only ever moves to a neighbouring bucket. Brokers that are unavailable keep their
+ * queues in the index, but are left out of the buckets so that no new queues are placed on them. Changes to the queues
+ * placed are passed on to a placement map shared by all groups. The index is not thread safe.
+ */
+public class BrokerIndex {
+    private final String groupId;
+    private final PlacementMap placementMap;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, Broker> brokers = new LinkedHashMap<>();
+    private final Map<String, Broker> availableBrokers = new LinkedHashMap<>();
+    // Available brokers by number of queues, where empty buckets are null
+    private final List<Set<Entry>> buckets = new ArrayList<>();
+    private int numBucketed = 0;
+    private int minCount = 0;
+    private final Map<String, String> addressBroker = new HashMap<>();
+    // Number of brokers besides the one in addressBroker holding an address, for addresses placed on several brokers
+    private final Map<String, Integer> extraHolders = new HashMap<>();
+
+    public BrokerIndex() {
+        this("", new PlacementMap());
+    }
+
+    public BrokerIndex(String groupId, PlacementMap placementMap) {
+        this.groupId = groupId;
+        this.placementMap = placementMap;
+    }
+
+    public boolean containsBroker(String brokerId) {
+        return entries.containsKey(brokerId);
+    }
+
+    /**
+     * Add a broker, along with the queues already present on it.
+     */
+    public void brokerAdded(String brokerId, Broker broker, Set<String> existingQueues) {
+        Entry entry = new Entry(brokerId);
+        entries.put(brokerId, entry);
+        brokers.put(brokerId, broker);
+        availableBrokers.put(brokerId, broker);
+        addToBucket(entry);
+        for (String queue : existingQueues) {
+            placed(queue, brokerId);
+        }
+    }
+
+    /**
+     * Remove a broker, returning the queues placed on it.
+     */
+    public Set<String> brokerRemoved(String brokerId) {
+        Entry entry = entries.remove(brokerId);
+        if (entry == null) {
+            return Collections.emptySet();
+        }
+        brokers.remove(brokerId);
+        if (entry.available) {
+            availableBrokers.remove(brokerId);
+            removeFromBucket(entry);
+        }
+        for (String queue : entry.queues) {
+            holderRemoved(queue, brokerId);
+        }
+        return entry.queues;
+    }
+
+    public void placed(String address, String brokerId) {
+        Entry entry = entries.get(brokerId);
+        if (entry == null || entry.queues.contains(address)) {
+            return;
+        }
+        if (entry.available) {
+            removeFromBucket(entry);
+        }
+        entry.queues.add(address);
+        if (entry.available) {
+            addToBucket(entry);
+        }
+        if (addressBroker.putIfAbsent(address, brokerId) != null) {
+            extraHolders.merge(address, 1, Integer::sum);
+        }
+        placementMap.placed(groupId, address, brokerId);
+    }
+
+    public void removed(String address, String brokerId) {
+        Entry entry = entries.get(brokerId);
+        if (entry == null || !entry.queues.contains(address)) {
+            return;
+        }
+        if (entry.available) {
+            removeFromBucket(entry);
+        }
+        entry.queues.remove(address);
+        if (entry.available) {
+            addToBucket(entry);
+        }
+        holderRemoved(address, brokerId);
+    }
+
+    /**
+     * Mark a broker as available for new queues or not.
+     *
+     * @return true if the availability of the broker changed.
+     */
+    public boolean setAvailable(String brokerId, boolean available) {
+        Entry entry = entries.get(brokerId);
+        if (entry == null || entry.available == available) {
+            return false;
+        }
+        entry.available = available;
+        if (available) {
+            availableBrokers.put(brokerId, brokers.get(brokerId));
+            addToBucket(entry);
+        } else {
+            availableBrokers.remove(brokerId);
+            removeFromBucket(entry);
+        }
+        return true;
+    }
+
+    public boolean isAvailable(String brokerId) {
+        Entry entry = entries.get(brokerId);
+        return entry != null && entry.available;
+    }
+
+    private void addToBucket(Entry entry) {
+        int count = entry.queues.size();
+        while (buckets.size() <= count) {
+            buckets.add(null);
+        }
+        Set<Entry> bucket = buckets.get(count);
+        if (bucket == null) {
+            bucket = new LinkedHashSet<>();
+            buckets.set(count, bucket);
+        }
+        bucket.add(entry);
+        if (numBucketed == 0 || count < minCount) {
+            minCount = count;
+        }
+        numBucketed++;
+    }
+
+    private void removeFromBucket(Entry entry) {
+        int count = entry.queues.size();
+        Set<Entry> bucket = buckets.get(count);
+        bucket.remove(entry);
+        numBucketed--;
+        if (bucket.isEmpty()) {
+            buckets.set(count, null);
+            if (count == minCount) {
+                updateMinCount();
+            }
+        }
+    }
+
+    private void updateMinCount() {
+        if (numBucketed == 0) {
+            minCount = 0;
+            return;
+        }
+        // Another broker is at most one bucket away when the queues of a broker change, so this only scans far
+        // when a broker is removed or becomes unavailable
+        while (minCount < buckets.size() && buckets.get(minCount) == null) {
+            minCount++;
+        }
+    }
+
+    private void holderRemoved(String address, String brokerId) {
+        placementMap.removed(groupId, address, brokerId);
+        Integer extra = extraHolders.get(address);
+        if (extra == null) {
+            addressBroker.remove(address);
+            return;
+        }
+
+        if (extra == 1) {
+            extraHolders.remove(address);
+        } else {
+            extraHolders.put(address, extra - 1);
+        }
+        if (brokerId.equals(addressBroker.get(address))) {
+            // An address deployed on all brokers of a group is still held by another broker
+            for (Entry entry : entries.values()) {
+                if (!entry.brokerId.equals(brokerId) && entry.queues.contains(address)) {
+                    addressBroker.put(address, entry.brokerId);
+                    return;
+                }
+            }
+        }
+    }
+
+    public boolean isPlaced(String address) {
+        return addressBroker.containsKey(address);
+    }
+
+    /**
+     * The broker holding an address, or null if the address is not placed. If the address is placed on several
+     * brokers, one of them is returned.
+     */
+    public String getBroker(String address) {
+        return addressBroker.get(address);
+    }
+
+    /**
+     * The ids of all brokers holding an address.
+     */
+    public List<String> getBrokersHolding(String address) {
+        String holder = addressBroker.get(address);
+        if (holder == null) {
+            return Collections.emptyList();
+        } else if (!extraHolders.containsKey(address)) {
+            return Collections.singletonList(holder);
+        }
+
+        List<String> holders = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.queues.contains(address)) {
+                holders.add(entry.brokerId);
+            }
+        }
+        return holders;
+    }
+
+    /**
+     * The id of the available broker with the fewest queues, or null if no broker is available.
+     */
+    public String getLeastLoaded() {
+        if (numBucketed == 0) {
+            return null;
+        }
+        return buckets.get(minCount).iterator().next().brokerId;
+    }
+
+    /**
+     * The brokers of the index. The map is returned as is rather than wrapped, since placement strategies iterate it
+     * for every address placed, and must not be modified.
+     */
+    public Map<String, Broker> getBrokers() {
+        return brokers;
+    }
+
+    /**
+     * The brokers available for new queues. As with {@link #getBrokers()}, the map must not be modified.
+     */
+    public Map<String, Broker> getAvailableBrokers() {
+        return availableBrokers;
+    }
+
+    public Set<String> getQueues(String brokerId) {
+        Entry entry = entries.get(brokerId);
+        return entry == null ? Collections.emptySet() : Collections.unmodifiableSet(entry.queues);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    private static class Entry {
+        private final String brokerId;
+        private final Set<String> queues = new HashSet<>();
+        private boolean available = true;
+
+        private Entry(String brokerId) {
+            this.brokerId = brokerId;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+/**
+ * Load of a broker, as last sampled from the broker.
+ */
+public final class BrokerLoad {
+    public static final BrokerLoad EMPTY = new BrokerLoad(0, 0, 0);
+
+    private final long messageCount;
+    private final long consumerCount;
+    private final long addressMemoryUsage;
+
+    public BrokerLoad(long messageCount, long consumerCount, long addressMemoryUsage) {
+        this.messageCount = messageCount;
+        this.consumerCount = consumerCount;
+        this.addressMemoryUsage = addressMemoryUsage;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public long getConsumerCount() {
+        return consumerCount;
+    }
+
+    public long getAddressMemoryUsage() {
+        return addressMemoryUsage;
+    }
+
+    @Override
+    public String toString() {
+        return "{messageCount=" + messageCount + ",consumerCount=" + consumerCount + ",addressMemoryUsage=" + addressMemoryUsage + "}";
+    }
+}
@@ -1,11 +1,10 @@
 package enmasse.queue.scheduler;
 
 import java.util.Map;
-import java.util.Set;
 
 /**
- * Interface for someone interested in addressing config.
+ * Interface for someone interested in addressing config. Only groups whose addresses have changed are passed on.
  */
 public interface ConfigListener {
-    void addressesChanged(Map<String, Set<String>> addressMap);
+    void addressesChanged(Map<String, AddressChange> changes);
 }
@@ -9,9 +9,12 @@ import org.apache.qpid.proton.amqp.messaging.AmqpValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -23,6 +26,10 @@ public class ConfigServiceClient extends AbstractVerticle {
     private final int configPort;
     private final ConfigListener configListener;
     private volatile ProtonConnection configConnection;
+    // Addresses per group in the last configuration received, only accessed from the context of this verticle
+    private Map<String, Set<String>> currentConfig = Collections.emptyMap();
+    // Replication factor of the addresses configured with one in the last configuration received
+    private Map<String, Integer> currentReplicas = Collections.emptyMap();
 
     public ConfigServiceClient(String configHost, int configPort, ConfigListener configListener) {
         this.configHost = configHost;
@@ -52,8 +59,15 @@ public class ConfigServiceClient extends AbstractVerticle {
                 });
                 receiver.handler((protonDelivery, message) -> {
                     String payload = (String)((AmqpValue)message.getBody()).getValue();
-                    Map<String, Set<String>> addressConfig = decodeAddressConfig(new JsonObject(payload));
-                    configListener.addressesChanged(addressConfig);
+                    Map<String, Integer> replicas = new HashMap<>();
+                    Map<String, Set<String>> addressConfig = decodeAddressConfig(new JsonObject(payload), replicas);
+                    Map<String, AddressChange> changes = diffAddressConfig(currentConfig, addressConfig, currentReplicas, replicas);
+                    currentConfig = addressConfig;
+                    currentReplicas = replicas;
+                    if (!changes.isEmpty()) {
+                        log.info("Address configuration changed for groups " + changes.keySet());
+                        configListener.addressesChanged(changes);
+                    }
                 });
                 receiver.open();
             } else {
@@ -63,15 +77,22 @@ public class ConfigServiceClient extends AbstractVerticle {
         });
     }
 
-    private Map<String, Set<String>> decodeAddressConfig(JsonObject payload) {
+    /**
+     * Decode the queues per group, collecting the replication factor of the queues that have one.
+     */
+    private Map<String, Set<String>> decodeAddressConfig(JsonObject payload, Map<String, Integer> replicas) {
         Map<String, Set<String>> addressMap = new LinkedHashMap<>();
         for (String address : payload.fieldNames()) {
             JsonObject addressObject = payload.getJsonObject(address);
             if (isQueue(addressObject)) {
+                Integer factor = addressObject.getInteger("replicas");
+                if (factor != null && factor > 0) {
+                    replicas.put(address, factor);
+                }
                 String groupId = addressObject.getString("group_id");
                 Set<String> addresses = addressMap.get(groupId);
                 if (addresses == null) {
-                    addresses = new HashSet<>();
+                    addresses = new LinkedHashSet<>();
                     addressMap.put(groupId, addresses);
                 }
                 addresses.add(address);
@@ -80,6 +101,50 @@ public class ConfigServiceClient extends AbstractVerticle {
         return addressMap;
     }
 
+    /**
+     * Compute the changes per group between two configurations. Groups that are unchanged are left out.
+     */
+    static Map<String, AddressChange> diffAddressConfig(Map<String, Set<String>> previous, Map<String, Set<String>> current) {
+        return diffAddressConfig(previous, current, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    /**
+     * Compute the changes per group between two configurations, including changes to the replication factor of
+     * addresses. A factor that is no longer configured is reported as 0.
+     */
+    static Map<String, AddressChange> diffAddressConfig(Map<String, Set<String>> previous, Map<String, Set<String>> current,
+                                                        Map<String, Integer> previousReplicas, Map<String, Integer> currentReplicas) {
+        Map<String, AddressChange> changes = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> entry : current.entrySet()) {
+            Set<String> existing = previous.getOrDefault(entry.getKey(), Collections.emptySet());
+            Set<String> updated = entry.getValue();
+
+            Map<String, Integer> replicas = new HashMap<>();
+            for (String address : updated) {
+                Integer factor = currentReplicas.get(address);
+                if (!Objects.equals(factor, existing.contains(address) ? previousReplicas.get(address) : null)) {
+                    replicas.put(address, factor == null ? 0 : factor);
+                }
+            }
+            if (existing.equals(updated) && replicas.isEmpty()) {
+                continue;
+            }
+
+            Set<String> added = new LinkedHashSet<>(updated);
+            added.removeAll(existing);
+            Set<String> removed = new LinkedHashSet<>(existing);
+            removed.removeAll(updated);
+            changes.put(entry.getKey(), AddressChange.of(added, removed, replicas));
+        }
+
+        for (String groupId : previous.keySet()) {
+            if (!current.containsKey(groupId)) {
+                changes.put(groupId, AddressChange.groupRemoved());
+            }
+        }
+        return changes;
+    }
+
     private boolean isQueue(JsonObject addressObject) {
         return addressObject.getBoolean("store_and_forward") && !addressObject.getBoolean("multicast");
     }
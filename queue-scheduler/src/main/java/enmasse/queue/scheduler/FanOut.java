@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Runs broker operations concurrently, starting a new operation as soon as one completes, with at most a fixed number
+ * of operations in progress. Failures do not stop the remaining operations, and are reported together once all
+ * operations have completed.
+ */
+public class FanOut {
+    public static final int DEFAULT_MAX_PARALLELISM = 16;
+    private final int maxParallelism;
+
+    public FanOut(int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("Max parallelism must be at least 1, was " + maxParallelism);
+        }
+        this.maxParallelism = maxParallelism;
+    }
+
+    /**
+     * Run the operations. The returned stage fails with a {@link FanOutException} if any of the operations failed.
+     */
+    public CompletionStage<Void> run(Collection<Supplier<CompletionStage<Void>>> operations) {
+        if (operations.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Run run = new Run(operations, maxParallelism);
+        run.fill();
+        return run.result;
+    }
+
+    private static class Run {
+        private final Iterator<Supplier<CompletionStage<Void>>> pending;
+        private final int total;
+        private final int maxParallelism;
+        private final List<Throwable> failures = new ArrayList<>();
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private int inProgress = 0;
+        private int completed = 0;
+        private boolean filling = false;
+
+        private Run(Collection<Supplier<CompletionStage<Void>>> operations, int maxParallelism) {
+            this.pending = new ArrayList<>(operations).iterator();
+            this.total = operations.size();
+            this.maxParallelism = maxParallelism;
+        }
+
+        /**
+         * Start operations until the limit is reached. Operations completing synchronously are replaced from this
+         * loop rather than recursively, and only one thread fills at a time.
+         */
+        private void fill() {
+            synchronized (this) {
+                if (filling) {
+                    return;
+                }
+                filling = true;
+            }
+            while (true) {
+                Supplier<CompletionStage<Void>> operation;
+                synchronized (this) {
+                    if (inProgress >= maxParallelism || !pending.hasNext()) {
+                        filling = false;
+                        return;
+                    }
+                    inProgress++;
+                    operation = pending.next();
+                }
+
+                CompletionStage<Void> stage;
+                try {
+                    stage = operation.get();
+                } catch (RuntimeException e) {
+                    stage = failed(e);
+                }
+                stage.whenComplete((v, cause) -> operationCompleted(cause));
+            }
+        }
+
+        private void operationCompleted(Throwable cause) {
+            boolean done;
+            synchronized (this) {
+                if (cause != null) {
+                    failures.add(cause);
+                }
+                inProgress--;
+                done = ++completed == total;
+            }
+
+            if (done) {
+                if (failures.isEmpty()) {
+                    result.complete(null);
+                } else {
+                    result.completeExceptionally(new FanOutException(failures, total));
+                }
+            } else {
+                fill();
+            }
+        }
+    }
+
+    private static CompletionStage<Void> failed(Throwable cause) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.List;
+
+/**
+ * Reports the failed operations of a {@link FanOut}. Each failure is added as a suppressed exception.
+ */
+public class FanOutException extends RuntimeException {
+    private final int numFailed;
+
+    public FanOutException(List<Throwable> failures, int numOperations) {
+        super(failures.size() + " of " + numOperations + " operations failed, first failure: " + failures.get(0).getMessage(), failures.get(0));
+        this.numFailed = failures.size();
+        for (Throwable failure : failures.subList(1, failures.size())) {
+            addSuppressed(failure);
+        }
+    }
+
+    public int getNumFailed() {
+        return numFailed;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the operations of a single group one after the other. An operation is started on the executor once the
+ * stage returned by the previous operation has completed, regardless of whether it succeeded. Operations of a higher
+ * priority are run before operations of a lower priority, and operations of the same priority in the order they were
+ * submitted.
+ *
+ * Since a lane only hands the executor its next operation when the previous one has completed, the lanes of the
+ * groups take turns on the executor, and a group with a lot of work queued does not hold back the other groups.
+ */
+public class GroupLane {
+    public enum Priority {
+        /**
+         * Changes to the addresses and brokers of a group, which must be applied in order.
+         */
+        NORMAL,
+        /**
+         * Placement of addresses already added to the group, done in chunks.
+         */
+        BULK
+    }
+
+    private final Executor executor;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Map<Priority, Queue<Task>> queued = new EnumMap<>(Priority.class);
+    private boolean running = false;
+
+    public GroupLane(Executor executor) {
+        this.executor = executor;
+        for (Priority priority : Priority.values()) {
+            queued.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    public CompletionStage<Void> submit(Operation operation) {
+        return submit(Priority.NORMAL, operation);
+    }
+
+    public CompletionStage<Void> submit(Priority priority, Operation operation) {
+        Task task = new Task(operation);
+        pending.incrementAndGet();
+        task.result.whenComplete((v, cause) -> pending.decrementAndGet());
+        synchronized (this) {
+            queued.get(priority).add(task);
+            if (running) {
+                return task.result;
+            }
+            running = true;
+        }
+        runNext();
+        return task.result;
+    }
+
+    private void runNext() {
+        Task next = null;
+        synchronized (this) {
+            for (Queue<Task> tasks : queued.values()) {
+                next = tasks.poll();
+                if (next != null) {
+                    break;
+                }
+            }
+            if (next == null) {
+                running = false;
+                return;
+            }
+        }
+        Task task = next;
+        executor.execute(() -> {
+            CompletionStage<Void> stage;
+            try {
+                stage = task.operation.run();
+            } catch (RuntimeException e) {
+                stage = failedStage(e);
+            }
+            stage.whenComplete((v, cause) -> {
+                if (cause != null) {
+                    task.result.completeExceptionally(cause);
+                } else {
+                    task.result.complete(null);
+                }
+                runNext();
+            });
+        });
+    }
+
+    private static CompletionStage<Void> failedStage(Throwable cause) {
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(cause);
+        return failed;
+    }
+
+    /**
+     * The number of operations submitted that have not yet completed, including the one running.
+     */
+    public int getPendingOperations() {
+        return pending.get();
+    }
+
+    public interface Operation {
+        CompletionStage<Void> run();
+    }
+
+    private static class Task {
+        private final Operation operation;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private Task(Operation operation) {
+            this.operation = operation;
+        }
+    }
+}
@@ -0,0 +1,635 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Contains the brokers and addresses of a single group. The state is only modified from the lane of the group, but
+ * the assignment of addresses to brokers may be read from any thread. New queues are only placed on brokers that are
+ * available, and queues that could not be deployed are placed again when the brokers are checked.
+ *
+ * An address is placed on as many brokers as its replication factor. Addresses without a configured factor are
+ * placed on a single broker, except for the address of a group with a single address, which is placed on the number
+ * of brokers given for scalable addresses, or on every broker of the group. When the factor is lowered, the surplus
+ * replicas are kept until they hold no messages.
+ */
+public class GroupState {
+    private static final Logger log = LoggerFactory.getLogger(GroupState.class.getName());
+    /**
+     * Place the address of a group with a single address on every broker of the group.
+     */
+    public static final int ALL_BROKERS = 0;
+    private final String groupId;
+    private final PlacementStrategy placementStrategy;
+    private final FanOut fanOut;
+    private final int scalableReplicas;
+    // Replication factor of the addresses configured with one
+    private final Map<String, Integer> replicas = new HashMap<>();
+    private final BrokerIndex index;
+    private final Set<String> addresses = ConcurrentHashMap.newKeySet();
+    // Corrections to the index for failed operations, applied from the lane before the next change
+    private final Queue<Runnable> indexCorrections = new ConcurrentLinkedQueue<>();
+    // Addresses that failed to deploy or found too few available brokers, placed again on the next check
+    private final Set<String> unplaced = new HashSet<>();
+    // Surplus replicas left by lowering the replication factor or moving a queue, deleted once empty
+    private final Map<String, Set<String>> draining = new LinkedHashMap<>();
+    // Surplus queues whose message count is being read, as address/broker id
+    private final Set<String> drainChecks = ConcurrentHashMap.newKeySet();
+    // Addresses added to a shared group in bulk that are still to be placed, in the order they were added
+    private final Set<String> pendingPlacement = new LinkedHashSet<>();
+    private volatile int numPendingPlacement = 0;
+    // Copy of the broker map for readers outside of the lane
+    private volatile Map<String, Broker> brokerSnapshot = Collections.emptyMap();
+
+    public GroupState(String groupId, PlacementStrategy placementStrategy) {
+        this(groupId, placementStrategy, new FanOut(FanOut.DEFAULT_MAX_PARALLELISM));
+    }
+
+    public GroupState(String groupId, PlacementStrategy placementStrategy, FanOut fanOut) {
+        this(groupId, placementStrategy, fanOut, ALL_BROKERS);
+    }
+
+    /**
+     * @param scalableReplicas The number of brokers to place the address of a group with a single address on, when
+     *                         it has no replication factor configured, or {@link #ALL_BROKERS}.
+     */
+    public GroupState(String groupId, PlacementStrategy placementStrategy, FanOut fanOut, int scalableReplicas) {
+        this(groupId, placementStrategy, fanOut, scalableReplicas, new PlacementMap());
+    }
+
+    /**
+     * @param placementMap The map the placement of the addresses of this group is published to.
+     */
+    public GroupState(String groupId, PlacementStrategy placementStrategy, FanOut fanOut, int scalableReplicas, PlacementMap placementMap) {
+        this.groupId = groupId;
+        this.index = new BrokerIndex(groupId, placementMap);
+        this.placementStrategy = placementStrategy;
+        this.fanOut = fanOut;
+        this.scalableReplicas = scalableReplicas;
+    }
+
+    public CompletionStage<Void> addressesUpdated(Set<String> updated) {
+        Set<String> removed = new HashSet<>(addresses);
+        removed.removeAll(updated);
+
+        Set<String> added = new LinkedHashSet<>(updated);
+        added.removeAll(addresses);
+        return addressesChanged(AddressChange.of(added, removed));
+    }
+
+    /**
+     * Apply a change to the addresses of this group. Addresses forgotten by a reset are not deleted from the brokers.
+     */
+    public CompletionStage<Void> addressesChanged(AddressChange change) {
+        return addressesChanged(change, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Apply a change to the addresses of this group, placing at most the given number of added addresses right
+     * away. The remaining addresses are placed by {@link #placePending(int)}.
+     */
+    public CompletionStage<Void> addressesChanged(AddressChange change, int maxPlaced) {
+        syncIndex();
+        if (change.isReset()) {
+            addresses.clear();
+            replicas.clear();
+        }
+
+        List<CompletionStage<Void>> results = new ArrayList<>();
+        Set<String> removed = new HashSet<>();
+        for (String address : change.getRemoved()) {
+            replicas.remove(address);
+            if (addresses.remove(address)) {
+                removed.add(address);
+            }
+        }
+        if (!removed.isEmpty()) {
+            results.add(deleteAddresses(removed));
+        }
+
+        List<Supplier<CompletionStage<Void>>> resized = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : change.getReplicas().entrySet()) {
+            String address = entry.getKey();
+            Integer previous = entry.getValue() > 0 ? replicas.put(address, entry.getValue()) : replicas.remove(address);
+            if (addresses.contains(address) && !Objects.equals(previous, replicas.get(address))) {
+                log.info("Replication factor of " + address + " in group " + groupId + " changed to " + replicasOf(address));
+                addReplicaOperations(address, replicasOf(address), true, resized);
+            }
+        }
+        if (!resized.isEmpty()) {
+            results.add(fanOut.run(resized));
+        }
+
+        Set<String> added = new LinkedHashSet<>();
+        for (String address : change.getAdded()) {
+            if (addresses.add(address)) {
+                added.add(address);
+            }
+        }
+        indexExistingQueues(added);
+        if (added.size() > maxPlaced && addresses.size() > 1) {
+            Iterator<String> it = added.iterator();
+            Set<String> placedNow = new LinkedHashSet<>();
+            while (placedNow.size() < maxPlaced) {
+                placedNow.add(it.next());
+            }
+            while (it.hasNext()) {
+                pendingPlacement.add(it.next());
+            }
+            numPendingPlacement = pendingPlacement.size();
+            results.add(distributeAddresses(placedNow));
+        } else if (!added.isEmpty()) {
+            results.add(distributeAddresses(added));
+        }
+
+        log.info("Updated addresses for " + groupId + ": " + added.size() + " added, " + removed.size() + " removed, " + addresses.size() + " total");
+        if (log.isDebugEnabled()) {
+            log.debug("Addresses added to " + groupId + ": " + added + ", removed: " + removed);
+        }
+        return allOf(results);
+    }
+
+    public CompletionStage<Void> brokerAdded(String brokerId, Broker broker) {
+        syncIndex();
+        if (index.containsBroker(brokerId)) {
+            throw new IllegalArgumentException("Broker with id " + brokerId + " already exists in group " + groupId);
+        }
+        index.brokerAdded(brokerId, broker, getGroupQueues(broker));
+        publishBrokers();
+
+        log.info("Broker " + brokerId + " in group " + groupId + " was added, distributing " + addresses.size() + " addresses");
+        return distributeAddresses(addresses);
+    }
+
+    /**
+     * Add multiple brokers at once, distributing the addresses of the group across all of them in a single pass.
+     */
+    public CompletionStage<Void> brokersAdded(Map<String, Broker> brokers) {
+        syncIndex();
+        for (Map.Entry<String, Broker> entry : brokers.entrySet()) {
+            if (index.containsBroker(entry.getKey())) {
+                log.warn("Broker with id " + entry.getKey() + " already exists in group " + groupId + ", ignoring");
+                continue;
+            }
+            index.brokerAdded(entry.getKey(), entry.getValue(), getGroupQueues(entry.getValue()));
+        }
+        publishBrokers();
+
+        log.info("Brokers " + brokers.keySet() + " in group " + groupId + " were added, distributing " + addresses.size() + " addresses");
+        return distributeAddresses(addresses);
+    }
+
+    public CompletionStage<Void> brokerRemoved(String brokerId) {
+        syncIndex();
+        if (!index.containsBroker(brokerId)) {
+            log.info("Broker was already removed, ignoring");
+            return CompletableFuture.completedFuture(null);
+        }
+        Set<String> orphaned = index.brokerRemoved(brokerId);
+        publishBrokers();
+        log.info("Broker " +  brokerId + " in group " + groupId + " was removed");
+        // Ensure missing queues are recreated on other brokers, unless they are meant to be on every broker
+        return distributeAddresses(orphaned);
+    }
+
+    /**
+     * Place up to the given number of the addresses left to place by {@link #addressesChanged(AddressChange, int)}.
+     * Addresses removed from the group in the meantime are skipped.
+     */
+    public CompletionStage<Void> placePending(int maxPlaced) {
+        syncIndex();
+        Set<String> chunk = new LinkedHashSet<>();
+        Iterator<String> it = pendingPlacement.iterator();
+        while (it.hasNext() && chunk.size() < maxPlaced) {
+            chunk.add(it.next());
+            it.remove();
+        }
+        numPendingPlacement = pendingPlacement.size();
+        return distributeAddresses(chunk);
+    }
+
+    /**
+     * The number of addresses added in bulk that are still to be placed. May be called from any thread.
+     */
+    public int getNumPendingPlacement() {
+        return numPendingPlacement;
+    }
+
+    /**
+     * Place the addresses that failed to deploy, or are missing replicas because brokers were unavailable, on the
+     * brokers currently available, and delete the surplus replicas that have been drained since the last check.
+     */
+    public CompletionStage<Void> brokersChecked() {
+        syncIndex();
+        List<CompletionStage<Void>> results = new ArrayList<>();
+        if (!unplaced.isEmpty()) {
+            Set<String> candidates = new HashSet<>(unplaced);
+            unplaced.clear();
+            log.info("Placing " + candidates.size() + " addresses of group " + groupId + " again");
+            results.add(distributeAddresses(candidates));
+        }
+
+        List<Supplier<CompletionStage<Void>>> drains = new ArrayList<>();
+        Iterator<Map.Entry<String, Set<String>>> it = draining.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Set<String>> entry = it.next();
+            String address = entry.getKey();
+            Set<String> surplus = entry.getValue();
+            List<String> holders = index.getBrokersHolding(address);
+            surplus.retainAll(holders);
+            // Keep replicas that are needed again, for instance because the replication factor was raised
+            int needed = addresses.contains(address) ? replicasOf(address) : 0;
+            Iterator<String> surplusIt = surplus.iterator();
+            while (surplusIt.hasNext() && holders.size() - surplus.size() < needed) {
+                surplusIt.next();
+                surplusIt.remove();
+            }
+            if (surplus.isEmpty() || needed == 0) {
+                it.remove();
+                continue;
+            }
+            for (String brokerId : surplus) {
+                drains.add(drainOperation(address, brokerId));
+            }
+        }
+        if (!drains.isEmpty()) {
+            results.add(fanOut.run(drains));
+        }
+        return allOf(results);
+    }
+
+    /**
+     * Record the queues of newly added addresses that are already present on the brokers, which is the case when
+     * brokers attach before the configuration is received, so that they are not deployed a second time.
+     */
+    private void indexExistingQueues(Set<String> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, Broker> entry : index.getBrokers().entrySet()) {
+            Set<String> queues = entry.getValue().getQueueNames();
+            for (String address : added) {
+                if (queues.contains(address)) {
+                    index.placed(address, entry.getKey());
+                }
+            }
+        }
+    }
+
+    private Set<String> getGroupQueues(Broker broker) {
+        Set<String> queues = new HashSet<>();
+        for (String queue : broker.getQueueNames()) {
+            if (addresses.contains(queue)) {
+                queues.add(queue);
+            }
+        }
+        return queues;
+    }
+
+    private void publishBrokers() {
+        brokerSnapshot = Collections.unmodifiableMap(new LinkedHashMap<>(index.getBrokers()));
+    }
+
+    /**
+     * The brokers of this group. May be called from any thread.
+     */
+    public Map<String, Broker> getBrokers() {
+        return brokerSnapshot;
+    }
+
+    /**
+     * The addresses of this group. May be called from any thread.
+     */
+    public Set<String> getAddresses() {
+        return Collections.unmodifiableSet(addresses);
+    }
+
+    /**
+     * The addresses of this group placed on each broker. May be called from any thread, and reflects operations
+     * that have been issued but not yet completed.
+     */
+    public Map<String, Set<String>> getAssignment() {
+        Map<String, Set<String>> assignment = new LinkedHashMap<>();
+        for (Map.Entry<String, Broker> entry : brokerSnapshot.entrySet()) {
+            Set<String> queues = new TreeSet<>(entry.getValue().getQueueNames());
+            queues.retainAll(addresses);
+            assignment.put(entry.getKey(), queues);
+        }
+        return assignment;
+    }
+
+    public boolean isEmpty() {
+        return index.isEmpty() && addresses.isEmpty();
+    }
+
+    /**
+     * Move queues from the brokers holding more than their share of the addresses of a shared group to the brokers
+     * holding less, for as long as the limiter allows more moves. A queue is moved by deploying it on the target
+     * broker, after which the queue on the source broker is drained like a surplus replica: it is only deleted once it
+     * holds no messages, and no longer counts towards the share of the source broker in the meantime.
+     *
+     * @return A stage completing when all started moves have completed their first drain check.
+     */
+    public CompletionStage<Void> rebalance(MoveLimiter limiter) {
+        syncIndex();
+        Map<String, Broker> brokers = index.getAvailableBrokers();
+        if (addresses.size() <= 1 || brokers.size() < 2) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Map<String, Set<String>> placed = new LinkedHashMap<>();
+        for (String brokerId : brokers.keySet()) {
+            Set<String> queues = new LinkedHashSet<>(index.getQueues(brokerId));
+            queues.retainAll(addresses);
+            queues.removeIf(address -> isDraining(address, brokerId));
+            placed.put(brokerId, queues);
+        }
+
+        List<CompletionStage<Void>> moves = new ArrayList<>();
+        while (true) {
+            String sourceId = null;
+            int min = Integer.MAX_VALUE;
+            for (Map.Entry<String, Set<String>> entry : placed.entrySet()) {
+                int count = entry.getValue().size();
+                if (sourceId == null || count > placed.get(sourceId).size()) {
+                    sourceId = entry.getKey();
+                }
+                min = Math.min(min, count);
+            }
+            Set<String> sourceQueues = placed.get(sourceId);
+            if (sourceQueues.size() - min <= 1) {
+                break;
+            }
+
+            Map<String, Broker> targets = new LinkedHashMap<>();
+            for (Map.Entry<String, Set<String>> entry : placed.entrySet()) {
+                if (entry.getValue().size() == min) {
+                    targets.put(entry.getKey(), brokers.get(entry.getKey()));
+                }
+            }
+
+            String address = null;
+            String targetId = null;
+            for (String candidate : sourceQueues) {
+                String selected = placementStrategy.selectBroker(candidate, targets);
+                if (!placed.get(selected).contains(candidate)) {
+                    address = candidate;
+                    targetId = selected;
+                    break;
+                }
+            }
+
+            if (address == null || !limiter.tryStartMove()) {
+                break;
+            }
+
+            sourceQueues.remove(address);
+            placed.get(targetId).add(address);
+            moves.add(moveQueue(address, sourceId, targetId).whenComplete((v, cause) -> limiter.moveCompleted()));
+        }
+        return allOf(moves);
+    }
+
+    private CompletionStage<Void> moveQueue(String address, String sourceId, String targetId) {
+        Broker target = index.getBrokers().get(targetId);
+        log.info("Moving queue " + address + " in group " + groupId + " from " + sourceId + " to " + targetId);
+        index.placed(address, targetId);
+        startDraining(address, sourceId);
+        Supplier<CompletionStage<Void>> drain = drainOperation(address, sourceId);
+        return target.deployQueue(address)
+                .whenComplete(correctOnFailure(() -> {
+                    index.removed(address, targetId);
+                    stopDraining(address, sourceId);
+                    unplaced.add(address);
+                }))
+                .thenCompose(v -> drain.get());
+    }
+
+    /**
+     * The number of brokers an address should be placed on.
+     */
+    private int replicasOf(String address) {
+        Integer configured = replicas.get(address);
+        if (configured != null) {
+            return configured;
+        }
+        // TODO: Fetch this information from somewhere, but assume > 1 address means shared flavor
+        if (addresses.size() == 1) {
+            return scalableReplicas == ALL_BROKERS ? index.getBrokers().size() : scalableReplicas;
+        }
+        return 1;
+    }
+
+    private CompletionStage<Void> distributeAddresses(Set<String> candidates) {
+        if (index.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<CompletionStage<Void>> results = new ArrayList<>();
+        List<Supplier<CompletionStage<Void>>> replicaOperations = new ArrayList<>();
+        for (String address : candidates) {
+            if (!addresses.contains(address)) {
+                continue;
+            }
+            int wanted = replicasOf(address);
+            if (wanted > 1) {
+                addReplicaOperations(address, wanted, false, replicaOperations);
+                continue;
+            }
+            // Skip addresses that are already distributed. This is to avoid changes in broker list to affect where queues are scheduled
+            if (index.isPlaced(address)) {
+                continue;
+            }
+            if (index.getAvailableBrokers().isEmpty()) {
+                unplaced.add(address);
+                continue;
+            }
+            String brokerId = placementStrategy.selectBroker(address, index);
+            results.add(deployOperation(brokerId, index.getBrokers().get(brokerId), address).get());
+        }
+        if (!replicaOperations.isEmpty()) {
+            results.add(fanOut.run(replicaOperations));
+        }
+        return allOf(results);
+    }
+
+    /**
+     * Add the operations bringing the number of brokers holding an address up to the wanted number, or down to it if
+     * shrinking. Replicas that can not be placed because brokers are unavailable are placed again on the next check.
+     * Surplus replicas are only deleted once they hold no messages, and are checked again until then.
+     */
+    private void addReplicaOperations(String address, int wanted, boolean shrink, List<Supplier<CompletionStage<Void>>> operations) {
+        List<String> holders = index.getBrokersHolding(address);
+        if (holders.size() >= wanted) {
+            if (shrink && holders.size() > wanted) {
+                for (String brokerId : holders.subList(wanted, holders.size())) {
+                    startDraining(address, brokerId);
+                    operations.add(drainOperation(address, brokerId));
+                }
+            }
+            return;
+        }
+
+        Map<String, Broker> candidates = new LinkedHashMap<>(index.getAvailableBrokers());
+        candidates.keySet().removeAll(holders);
+        int missing = wanted - holders.size();
+        if (missing >= candidates.size()) {
+            for (Map.Entry<String, Broker> entry : candidates.entrySet()) {
+                operations.add(deployOperation(entry.getKey(), entry.getValue(), address));
+            }
+            missing -= candidates.size();
+        } else {
+            while (missing > 0) {
+                String brokerId = placementStrategy.selectBroker(address, candidates);
+                operations.add(deployOperation(brokerId, candidates.remove(brokerId), address));
+                missing--;
+            }
+        }
+        if (missing > 0 && index.getAvailableBrokers().size() < index.getBrokers().size()) {
+            unplaced.add(address);
+        }
+    }
+
+    private CompletionStage<Void> deleteAddresses(Set<String> removed) {
+        List<Supplier<CompletionStage<Void>>> deletes = new ArrayList<>();
+        Map<String, Broker> brokers = index.getBrokers();
+        for (String address : removed) {
+            for (String brokerId : index.getBrokersHolding(address)) {
+                deletes.add(deleteOperation(brokerId, brokers.get(brokerId), address));
+            }
+        }
+        return fanOut.run(deletes);
+    }
+
+    /**
+     * Record a deploy in the index, returning the operation deploying the queue. The index is updated right away, so
+     * that the following placement decisions take the queue into account.
+     */
+    private Supplier<CompletionStage<Void>> deployOperation(String brokerId, Broker broker, String address) {
+        index.placed(address, brokerId);
+        return () -> broker.deployQueue(address).whenComplete(correctOnFailure(() -> {
+            index.removed(address, brokerId);
+            unplaced.add(address);
+        }));
+    }
+
+    private Supplier<CompletionStage<Void>> deleteOperation(String brokerId, Broker broker, String address) {
+        index.removed(address, brokerId);
+        return () -> broker.deleteQueue(address).whenComplete(correctOnFailure(() -> index.placed(address, brokerId)));
+    }
+
+    private void startDraining(String address, String brokerId) {
+        draining.computeIfAbsent(address, a -> new LinkedHashSet<>()).add(brokerId);
+    }
+
+    private void stopDraining(String address, String brokerId) {
+        Set<String> surplus = draining.get(address);
+        if (surplus != null && surplus.remove(brokerId) && surplus.isEmpty()) {
+            draining.remove(address);
+        }
+    }
+
+    private boolean isDraining(String address, String brokerId) {
+        Set<String> surplus = draining.get(address);
+        return surplus != null && surplus.contains(brokerId);
+    }
+
+    /**
+     * The operation deleting a surplus replica of an address if it holds no messages. The replica stays in the
+     * index, and so in the placement map, until it is deleted, so that consumers can drain it. Replicas holding
+     * messages are checked again on the next broker check.
+     */
+    private Supplier<CompletionStage<Void>> drainOperation(String address, String brokerId) {
+        Broker broker = index.getBrokers().get(brokerId);
+        String key = address + "/" + brokerId;
+        return () -> {
+            if (!drainChecks.add(key)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return broker.getMessageCount(address).thenCompose(count -> {
+                if (count > 0) {
+                    log.debug("Keeping surplus queue " + address + " on " + brokerId + " in group " + groupId + " until its " + count + " messages are consumed");
+                    return CompletableFuture.<Void>completedFuture(null);
+                }
+                log.info("Deleting drained surplus queue " + address + " on " + brokerId + " in group " + groupId);
+                return broker.deleteQueue(address).thenRun(() -> indexCorrections.add(() -> {
+                    index.removed(address, brokerId);
+                    stopDraining(address, brokerId);
+                    unplaced.add(address);
+                }));
+            }).exceptionally(cause -> {
+                log.warn("Unable to drain surplus queue " + address + " on " + brokerId + " in group " + groupId + ", keeping it", cause);
+                return null;
+            }).whenComplete((v, cause) -> drainChecks.remove(key));
+        };
+    }
+
+    private BiConsumer<Void, Throwable> correctOnFailure(Runnable correction) {
+        return (v, cause) -> {
+            if (cause != null) {
+                indexCorrections.add(correction);
+            }
+        };
+    }
+
+    /**
+     * Apply the corrections for failed operations, and take brokers that stopped answering out of placement.
+     */
+    private void syncIndex() {
+        Runnable correction;
+        while ((correction = indexCorrections.poll()) != null) {
+            correction.run();
+        }
+        for (Map.Entry<String, Broker> entry : index.getBrokers().entrySet()) {
+            boolean available = entry.getValue().isAvailable();
+            if (index.setAvailable(entry.getKey(), available)) {
+                if (available) {
+                    log.info("Broker " + entry.getKey() + " in group " + groupId + " is available again");
+                } else {
+                    log.warn("Broker " + entry.getKey() + " in group " + groupId + " is unavailable, placing new queues on other brokers");
+                }
+            }
+        }
+    }
+
+    /**
+     * Limits the number of queue moves done when rebalancing.
+     */
+    public interface MoveLimiter {
+        boolean tryStartMove();
+        void moveCompleted();
+    }
+
+    static CompletionStage<Void> allOf(Collection<CompletionStage<Void>> stages) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[stages.size()];
+        int i = 0;
+        for (CompletionStage<Void> stage : stages) {
+            futures[i++] = stage.toCompletableFuture();
+        }
+        return CompletableFuture.allOf(futures);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * HTTP server exposing the metrics of the queue scheduler on /metrics, and the current assignment of addresses to
+ * brokers on /assignment. The brokers holding given addresses are looked up on /lookup, either with GET and an
+ * address parameter per address, or with POST and a JSON array of addresses as body.
+ */
+public class HTTPServer extends AbstractVerticle {
+    private static final Logger log = LoggerFactory.getLogger(HTTPServer.class.getName());
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private final QueueScheduler scheduler;
+    private final int port;
+    private volatile HttpServer server;
+
+    public HTTPServer(QueueScheduler scheduler, int port) {
+        this.scheduler = scheduler;
+        this.port = port;
+    }
+
+    @Override
+    public void start() {
+        server = vertx.createHttpServer()
+                .requestHandler(this::handleRequest)
+                .listen(port, ar -> {
+                    if (ar.succeeded()) {
+                        log.info("Started HTTP server on port " + ar.result().actualPort());
+                    } else {
+                        log.error("Error starting HTTP server", ar.cause());
+                    }
+                });
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    public int getPort() {
+        HttpServer current = server;
+        return current == null ? 0 : current.actualPort();
+    }
+
+    private void handleRequest(HttpServerRequest request) {
+        if ("/lookup".equals(request.path())) {
+            handleLookup(request);
+        } else if (request.method() != HttpMethod.GET) {
+            request.response().setStatusCode(405).end();
+        } else if ("/metrics".equals(request.path())) {
+            respond(request, this::encodeMetrics);
+        } else if ("/assignment".equals(request.path())) {
+            respond(request, this::encodeAssignment);
+        } else {
+            request.response().setStatusCode(404).end();
+        }
+    }
+
+    /**
+     * Lookups are answered from the placement map in memory, so they are served right away on the event loop.
+     */
+    private void handleLookup(HttpServerRequest request) {
+        if (request.method() == HttpMethod.GET) {
+            respondLookup(request, request.params().getAll("address"));
+        } else if (request.method() == HttpMethod.POST) {
+            request.bodyHandler(body -> {
+                List<String> addresses;
+                try {
+                    addresses = LookupServer.decodeAddresses(body.toString());
+                } catch (IOException e) {
+                    request.response().setStatusCode(400).end();
+                    return;
+                }
+                respondLookup(request, addresses);
+            });
+        } else {
+            request.response().setStatusCode(405).end();
+        }
+    }
+
+    private void respondLookup(HttpServerRequest request, List<String> addresses) {
+        PlacementMap placementMap = scheduler.getSchedulerState().getPlacementMap();
+        try {
+            request.response()
+                    .putHeader("Content-Type", "application/json")
+                    .end(mapper.writeValueAsString(LookupServer.encodeLocations(addresses, placementMap.lookup(addresses))));
+        } catch (JsonProcessingException e) {
+            log.warn("Error encoding response for " + request.path(), e);
+            request.response().setStatusCode(500).end();
+        }
+    }
+
+    private void respond(HttpServerRequest request, Supplier<ObjectNode> encoder) {
+        // The brokers are queried for their queues, which may take a while with many addresses
+        vertx.<String>executeBlocking(future -> {
+            try {
+                future.complete(mapper.writeValueAsString(encoder.get()));
+            } catch (JsonProcessingException e) {
+                future.fail(e);
+            }
+        }, false, result -> {
+            if (result.succeeded()) {
+                request.response()
+                        .putHeader("Content-Type", "application/json")
+                        .end(result.result());
+            } else {
+                log.warn("Error encoding response for " + request.path(), result.cause());
+                request.response().setStatusCode(500).end();
+            }
+        });
+    }
+
+    ObjectNode encodeMetrics() {
+        SchedulerMetrics metrics = scheduler.getMetrics();
+        SchedulerState state = scheduler.getSchedulerState();
+
+        ObjectNode root = mapper.createObjectNode();
+        root.put("brokersAttached", metrics.getBrokersAttached());
+        root.put("brokersDetached", metrics.getBrokersDetached());
+        root.put("pendingAddressChanges", scheduler.hasPendingAddressChanges());
+        root.set("placementLatencyMicros", encodeHistogram(metrics.getPlacementLatency()));
+        root.set("addressUpdateLatencyMillis", encodeHistogram(metrics.getAddressUpdateLatency()));
+
+        ObjectNode groups = root.putObject("groups");
+        for (String groupId : new TreeSet<>(state.getGroupIds())) {
+            GroupState groupState = state.getGroupState(groupId);
+            if (groupState == null) {
+                continue;
+            }
+            ObjectNode group = groups.putObject(groupId);
+            group.put("pendingOperations", state.getPendingOperations(groupId));
+            group.put("addresses", groupState.getAddresses().size());
+            group.put("pendingPlacement", groupState.getNumPendingPlacement());
+
+            ObjectNode brokers = group.putObject("brokers");
+            for (Map.Entry<String, Set<String>> entry : groupState.getAssignment().entrySet()) {
+                Broker broker = groupState.getBrokers().get(entry.getKey());
+                ObjectNode brokerNode = brokers.putObject(entry.getKey());
+                brokerNode.put("queues", entry.getValue().size());
+                if (broker != null) {
+                    brokerNode.put("available", broker.isAvailable());
+                    brokerNode.set("managementRoundTripMillis", encodeHistogram(broker.getManagementRoundTripTimes()));
+                }
+            }
+        }
+        return root;
+    }
+
+    ObjectNode encodeAssignment() {
+        SchedulerState state = scheduler.getSchedulerState();
+        ObjectNode root = mapper.createObjectNode();
+        for (String groupId : new TreeSet<>(state.getGroupIds())) {
+            GroupState groupState = state.getGroupState(groupId);
+            if (groupState == null) {
+                continue;
+            }
+            ObjectNode group = root.putObject(groupId);
+            ObjectNode brokers = group.putObject("brokers");
+            Set<String> unassigned = new TreeSet<>(groupState.getAddresses());
+            for (Map.Entry<String, Set<String>> entry : groupState.getAssignment().entrySet()) {
+                ArrayNode queues = brokers.putArray(entry.getKey());
+                for (String queue : entry.getValue()) {
+                    queues.add(queue);
+                }
+                unassigned.removeAll(entry.getValue());
+            }
+            ArrayNode unassignedNode = group.putArray("unassigned");
+            for (String address : unassigned) {
+                unassignedNode.add(address);
+            }
+        }
+        return root;
+    }
+
+    private static ObjectNode encodeHistogram(Histogram histogram) {
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        ObjectNode node = mapper.createObjectNode();
+        node.put("count", snapshot.getCount());
+        node.put("sum", snapshot.getSum());
+        node.put("p50", snapshot.getQuantile(0.5));
+        node.put("p99", snapshot.getQuantile(0.99));
+        ObjectNode buckets = node.putObject("buckets");
+        long[] bounds = snapshot.getBounds();
+        long[] counts = snapshot.getCounts();
+        for (int i = 0; i < bounds.length; i++) {
+            buckets.put(String.valueOf(bounds[i]), counts[i]);
+        }
+        buckets.put("+Inf", counts[bounds.length]);
+        return node;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram with fixed bucket bounds, safe for concurrent recording. Values are counted in the first bucket whose
+ * upper bound is larger than or equal to the value, or in an overflow bucket.
+ */
+public class Histogram {
+    private static final long[] LATENCY_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+    private final long[] bounds;
+    private final AtomicLongArray counts;
+    private final LongAdder sum = new LongAdder();
+
+    public Histogram(long ... bounds) {
+        this.bounds = Arrays.copyOf(bounds, bounds.length);
+        this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /**
+     * Create a histogram with buckets suitable for latencies from one to 60000 units.
+     */
+    public static Histogram latency() {
+        return new Histogram(LATENCY_BOUNDS);
+    }
+
+    public void record(long value) {
+        int index = Arrays.binarySearch(bounds, value);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        counts.incrementAndGet(index);
+        sum.add(value);
+    }
+
+    public Snapshot snapshot() {
+        long[] snapshotCounts = new long[counts.length()];
+        for (int i = 0; i < snapshotCounts.length; i++) {
+            snapshotCounts[i] = counts.get(i);
+        }
+        return new Snapshot(bounds, snapshotCounts, sum.sum());
+    }
+
+    public static class Snapshot {
+        private final long[] bounds;
+        private final long[] counts;
+        private final long sum;
+
+        private Snapshot(long[] bounds, long[] counts, long sum) {
+            this.bounds = bounds;
+            this.counts = counts;
+            this.sum = sum;
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (long bucket : counts) {
+                count += bucket;
+            }
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * The upper bound of the bucket containing the given quantile, or -1 if the quantile is in the overflow
+         * bucket or nothing was recorded.
+         */
+        public long getQuantile(double quantile) {
+            long count = getCount();
+            if (count == 0) {
+                return -1;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bounds[i];
+                }
+            }
+            return -1;
+        }
+
+        public long[] getBounds() {
+            return bounds;
+        }
+
+        public long[] getCounts() {
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.Map;
+
+/**
+ * Places an address on the broker with the fewest queues.
+ */
+public class LeastQueuesPlacement implements PlacementStrategy {
+    @Override
+    public String selectBroker(String address, Map<String, Broker> brokers) {
+        String selected = null;
+        long selectedQueues = Long.MAX_VALUE;
+        for (Map.Entry<String, Broker> entry : brokers.entrySet()) {
+            long numQueues = entry.getValue().getNumQueues();
+            if (numQueues < selectedQueues) {
+                selected = entry.getKey();
+                selectedQueues = numQueues;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Uses the queues placed on the brokers by the scheduler, which the index keeps ordered.
+     */
+    @Override
+    public String selectBroker(String address, BrokerIndex index) {
+        return index.getLeastLoaded();
+    }
+}
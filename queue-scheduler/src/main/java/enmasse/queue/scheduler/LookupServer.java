@@ -0,0 +1,305 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.proton.ProtonConnection;
+import io.vertx.proton.ProtonDelivery;
+import io.vertx.proton.ProtonReceiver;
+import io.vertx.proton.ProtonSender;
+import io.vertx.proton.ProtonServer;
+import io.vertx.proton.ProtonSession;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.Rejected;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * AMQP server answering which brokers hold the queue of an address, from the placement map of the scheduler.
+ * Requests are sent to {@value #LOOKUP_ADDRESS} with a JSON array of addresses, or a single address, as body, and
+ * answered on their reply-to address. Receivers attaching to {@value #CHANGES_ADDRESS} get the location of every
+ * placed address, followed by the locations of the addresses that changed, batched at a fixed interval. Lookup
+ * clients use a port of their own, since every connection on the scheduler port is taken to be a broker.
+ *
+ * Change messages are only sent while the receiver has credit. Until then, the addresses to send are kept per
+ * receiver and their locations are looked up when sent, so a slow receiver gets the latest location of each address
+ * once rather than every change in between.
+ */
+public class LookupServer extends AbstractVerticle {
+    private static final Logger log = LoggerFactory.getLogger(LookupServer.class.getName());
+    private static final ObjectMapper mapper = new ObjectMapper();
+    public static final String LOOKUP_ADDRESS = "$lookup";
+    public static final String CHANGES_ADDRESS = "$lookup-changes";
+    private static final long CHANGE_FLUSH_INTERVAL = 100;
+    private static final int MAX_ADDRESSES_PER_MESSAGE = 1000;
+
+    private final PlacementMap placementMap;
+    private final int port;
+    // Senders for replies and change subscriptions, only accessed from the context of this verticle
+    private final Map<String, ProtonSender> replySenders = new HashMap<>();
+    private final List<ChangeSubscription> changeSubscriptions = new ArrayList<>();
+    // Addresses changed since the last flush, added to from the group lanes while there are subscribers
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    private final Consumer<String> changeListener = changed::add;
+    private volatile ProtonServer server;
+    private long flushTimer = -1;
+
+    public LookupServer(PlacementMap placementMap, int port) {
+        this.placementMap = placementMap;
+        this.port = port;
+    }
+
+    @Override
+    public void start() {
+        server = ProtonServer.create(vertx);
+        server.connectHandler(connection -> {
+            connection.setContainer("queue-scheduler-lookup");
+            connection.openHandler(result -> {
+                log.debug("Lookup connection opened from " + connection.getRemoteContainer());
+            }).closeHandler(result -> {
+                closeLinks(connection);
+                connection.close();
+                connection.disconnect();
+            }).disconnectHandler(protonConnection -> {
+                closeLinks(connection);
+                connection.disconnect();
+            }).open();
+            connection.sessionOpenHandler(ProtonSession::open);
+            connection.receiverOpenHandler(this::receiverOpened);
+            connection.senderOpenHandler(this::senderOpened);
+        });
+        flushTimer = vertx.setPeriodic(CHANGE_FLUSH_INTERVAL, id -> flushChanges());
+        server.listen(port, result -> {
+            if (result.succeeded()) {
+                log.info("Started lookup server on port " + result.result().actualPort());
+            } else {
+                log.error("Error starting lookup server", result.cause());
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        if (flushTimer != -1) {
+            vertx.cancelTimer(flushTimer);
+        }
+        placementMap.removeListener(changeListener);
+        changeSubscriptions.clear();
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    public int getPort() {
+        ProtonServer current = server;
+        return current == null ? 0 : current.actualPort();
+    }
+
+    private void receiverOpened(ProtonReceiver receiver) {
+        if (!LOOKUP_ADDRESS.equals(receiver.getRemoteTarget().getAddress())) {
+            receiver.close();
+            return;
+        }
+        receiver.setTarget(receiver.getRemoteTarget());
+        receiver.handler(this::handleRequest);
+        receiver.open();
+    }
+
+    private void senderOpened(ProtonSender sender) {
+        Source source = (Source) sender.getRemoteSource();
+        if (source.getDynamic()) {
+            String replyAddress = UUID.randomUUID().toString();
+            replySenders.put(replyAddress, sender);
+            sender.closeHandler(result -> {
+                replySenders.remove(replyAddress);
+                sender.close();
+            });
+            source.setAddress(replyAddress);
+            sender.setSource(source);
+            sender.open();
+        } else if (CHANGES_ADDRESS.equals(source.getAddress())) {
+            sender.setSource(source);
+            ChangeSubscription subscription = new ChangeSubscription(sender);
+            sender.closeHandler(result -> {
+                removeChangeSubscription(subscription);
+                sender.close();
+            });
+            sender.sendQueueDrainHandler(s -> sendChanges(subscription));
+            sender.open();
+            addChangeSubscription(subscription);
+        } else {
+            sender.close();
+        }
+    }
+
+    private void handleRequest(ProtonDelivery delivery, Message request) {
+        ProtonSender replySender = replySenders.get(request.getReplyTo());
+        if (replySender == null) {
+            log.debug("No reply sender for lookup request with reply-to " + request.getReplyTo());
+            delivery.disposition(new Rejected(), true);
+            return;
+        }
+        try {
+            List<String> addresses = decodeAddresses((String) ((AmqpValue) request.getBody()).getValue());
+            Message response = createMessage(encodeLocations(addresses, placementMap.lookup(addresses)));
+            response.setAddress(request.getReplyTo());
+            response.setCorrelationId(request.getMessageId());
+            replySender.send(response);
+            delivery.disposition(new Accepted(), true);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Error handling lookup request", e);
+            delivery.disposition(new Rejected(), true);
+        }
+    }
+
+    private void addChangeSubscription(ChangeSubscription subscription) {
+        if (changeSubscriptions.isEmpty()) {
+            placementMap.addListener(changeListener);
+        }
+        changeSubscriptions.add(subscription);
+
+        // Changes made after taking the current addresses are sent on the next flush
+        subscription.pending.addAll(placementMap.snapshot().keySet());
+        sendChanges(subscription);
+    }
+
+    private void removeChangeSubscription(ChangeSubscription subscription) {
+        if (changeSubscriptions.remove(subscription) && changeSubscriptions.isEmpty()) {
+            placementMap.removeListener(changeListener);
+            changed.clear();
+        }
+    }
+
+    private void closeLinks(ProtonConnection connection) {
+        replySenders.values().removeIf(sender -> sender.getSession().getConnection() == connection);
+        for (ChangeSubscription subscription : new ArrayList<>(changeSubscriptions)) {
+            if (subscription.sender.getSession().getConnection() == connection) {
+                removeChangeSubscription(subscription);
+            }
+        }
+    }
+
+    private void flushChanges() {
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<String> addresses = new ArrayList<>();
+        Iterator<String> it = changed.iterator();
+        while (it.hasNext()) {
+            addresses.add(it.next());
+            it.remove();
+        }
+        for (ChangeSubscription subscription : changeSubscriptions) {
+            subscription.pending.addAll(addresses);
+            sendChanges(subscription);
+        }
+    }
+
+    /**
+     * Send the locations of the pending addresses of a subscription for as long as its receiver has credit.
+     */
+    private void sendChanges(ChangeSubscription subscription) {
+        ProtonSender sender = subscription.sender;
+        while (!subscription.pending.isEmpty() && sender.isOpen() && !sender.sendQueueFull()) {
+            List<String> addresses = new ArrayList<>();
+            Iterator<String> it = subscription.pending.iterator();
+            while (it.hasNext() && addresses.size() < MAX_ADDRESSES_PER_MESSAGE) {
+                addresses.add(it.next());
+                it.remove();
+            }
+            try {
+                sender.send(createMessage(encodeLocations(addresses, placementMap.lookup(addresses))));
+            } catch (JsonProcessingException e) {
+                log.warn("Error encoding address locations", e);
+            }
+        }
+    }
+
+    private static Message createMessage(ObjectNode body) throws JsonProcessingException {
+        Message message = Message.Factory.create();
+        message.setBody(new AmqpValue(mapper.writeValueAsString(body)));
+        message.setContentType("application/json");
+        return message;
+    }
+
+    /**
+     * Decode a JSON array of addresses, or a single address given as is.
+     */
+    static List<String> decodeAddresses(String payload) throws IOException {
+        if (!payload.trim().startsWith("[")) {
+            return Collections.singletonList(payload);
+        }
+        List<String> addresses = new ArrayList<>();
+        for (JsonNode address : mapper.readTree(payload)) {
+            addresses.add(address.asText());
+        }
+        return addresses;
+    }
+
+    private static class ChangeSubscription {
+        private final ProtonSender sender;
+        // Addresses whose location is still to be sent, in the order they changed
+        private final Set<String> pending = new LinkedHashSet<>();
+
+        private ChangeSubscription(ProtonSender sender) {
+            this.sender = sender;
+        }
+    }
+
+    /**
+     * Encode the location of each address, where an address that is not placed has no group and no brokers.
+     */
+    static ObjectNode encodeLocations(Collection<String> addresses, Map<String, PlacementMap.Location> locations) {
+        ObjectNode root = mapper.createObjectNode();
+        for (String address : addresses) {
+            ObjectNode node = root.putObject(address);
+            PlacementMap.Location location = locations.get(address);
+            if (location != null) {
+                node.put("group", location.getGroupId());
+            }
+            ArrayNode brokers = node.putArray("brokers");
+            if (location != null) {
+                for (String broker : location.getBrokers()) {
+                    brokers.add(broker);
+                }
+            }
+        }
+        return root;
+    }
+}
@@ -18,22 +18,68 @@ package enmasse.queue.scheduler;
 
 import io.vertx.core.Vertx;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 public class Main {
-    public static void main(String [] args) {
+    public static void main(String [] args) throws IOException {
         Vertx vertx = Vertx.vertx();
         String configHost = getEnvOrThrow("CONFIGURATION_SERVICE_HOST");
         int configPort = Integer.parseInt(getEnvOrThrow("CONFIGURATION_SERVICE_PORT"));
         int listenPort = 55667;
+        PlacementStrategy placementStrategy = getPlacementStrategy(System.getenv("QUEUE_PLACEMENT_STRATEGY"));
+        ArtemisOptions artemisOptions = ArtemisOptions.fromEnv(System.getenv());
 
         QueueScheduler scheduler = new QueueScheduler(
-                connection -> Artemis.create(vertx, connection),
-                listenPort);
+                connection -> Artemis.create(vertx, connection, artemisOptions),
+                listenPort,
+                placementStrategy,
+                Integer.parseInt(getEnvOrDefault("BROKER_FAN_OUT", String.valueOf(FanOut.DEFAULT_MAX_PARALLELISM))),
+                Integer.parseInt(getEnvOrDefault("PLACEMENT_CHUNK_SIZE", String.valueOf(SchedulerState.DEFAULT_PLACEMENT_CHUNK_SIZE))));
 
         scheduler.setProtonSaslAuthenticatorFactory(new DummySaslAuthenticatorFactory());
+        String scalableReplicas = System.getenv("SCALABLE_QUEUE_REPLICAS");
+        if (scalableReplicas != null) {
+            scheduler.setScalableReplicas(Integer.parseInt(scalableReplicas));
+        }
+        String brokerCheckInterval = System.getenv("BROKER_CHECK_INTERVAL");
+        if (brokerCheckInterval != null) {
+            scheduler.setBrokerCheckInterval(Long.parseLong(brokerCheckInterval));
+        }
+        String traceFile = System.getenv("SCHEDULER_TRACE_FILE");
+        if (traceFile != null) {
+            scheduler.setTraceRecorder(TraceRecorder.create(Paths.get(traceFile)));
+        }
+
+        String rebalanceInterval = System.getenv("REBALANCE_INTERVAL");
+        if (rebalanceInterval != null) {
+            scheduler.enableRebalancing(Long.parseLong(rebalanceInterval),
+                    Double.parseDouble(getEnvOrDefault("REBALANCE_MOVES_PER_SECOND", "10")),
+                    Integer.parseInt(getEnvOrDefault("REBALANCE_MAX_CONCURRENT_MOVES", "5")));
+        }
         ConfigServiceClient configServiceClient = new ConfigServiceClient(configHost, configPort, scheduler);
 
         vertx.deployVerticle(configServiceClient);
         vertx.deployVerticle(scheduler);
+        vertx.deployVerticle(new HTTPServer(scheduler, Integer.parseInt(getEnvOrDefault("HTTP_PORT", "8080"))));
+        vertx.deployVerticle(new LookupServer(scheduler.getSchedulerState().getPlacementMap(), Integer.parseInt(getEnvOrDefault("LOOKUP_PORT", "55668"))));
+    }
+
+    private static PlacementStrategy getPlacementStrategy(String name) {
+        if (name == null || name.equals("least-queues")) {
+            return new LeastQueuesPlacement();
+        } else if (name.equals("rendezvous")) {
+            return new RendezvousHashPlacement();
+        } else if (name.equals("load")) {
+            return new WeightedLoadPlacement();
+        } else {
+            throw new IllegalArgumentException("Unknown placement strategy " + name);
+        }
+    }
+
+    private static String getEnvOrDefault(String env, String defaultValue) {
+        String value = System.getenv(env);
+        return value == null ? defaultValue : value;
     }
 
     private static String getEnvOrThrow(String env) {
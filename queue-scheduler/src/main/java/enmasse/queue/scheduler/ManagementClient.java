@@ -0,0 +1,273 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonConnection;
+import io.vertx.proton.ProtonHelper;
+import io.vertx.proton.ProtonReceiver;
+import io.vertx.proton.ProtonSender;
+import io.vertx.proton.ProtonSession;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Pipelined request-response client for the Artemis management address. Requests are tagged with a correlation id
+ * and replies are matched on it, allowing up to a configurable number of requests in flight at the same time. All
+ * link and request state is only touched from the context of the connection.
+ *
+ * The timeout of a request is derived from the round trip times observed so far, the same way TCP derives its
+ * retransmission timeout, bounded by the configured minimum and maximum request timeout. Requests timing out open a
+ * circuit breaker, after which requests fail right away until the broker answers a probe request.
+ */
+public class ManagementClient {
+    private static final Logger log = LoggerFactory.getLogger(ManagementClient.class.getName());
+    private static final String MANAGEMENT_ADDRESS = "activemq.management";
+
+    private final Vertx vertx;
+    private final Context context;
+    private final ProtonSender sender;
+    private final int maxInFlight;
+    private final long minRequestTimeout;
+    private final long maxRequestTimeout;
+    private final CircuitBreaker circuitBreaker;
+    private final String idPrefix = UUID.randomUUID().toString() + "-";
+    private final Map<String, PendingRequest> inFlight = new LinkedHashMap<>();
+    private final Queue<PendingRequest> waiting = new ArrayDeque<>();
+    private final Histogram roundTripTimes = Histogram.latency();
+    private volatile String replyTo;
+    private long nextId = 0;
+    // Smoothed round trip time and its mean deviation, negative until the first reply is received
+    private double smoothedRoundTripTime = -1;
+    private double roundTripTimeVariation = 0;
+    private volatile long requestTimeout;
+
+    private ManagementClient(Vertx vertx, Context context, ProtonSender sender, ArtemisOptions options) {
+        this.vertx = vertx;
+        this.context = context;
+        this.sender = sender;
+        this.maxInFlight = options.maxInFlight();
+        this.minRequestTimeout = Math.min(options.minRequestTimeout(), options.requestTimeout());
+        this.maxRequestTimeout = options.requestTimeout();
+        this.requestTimeout = maxRequestTimeout;
+        this.circuitBreaker = new CircuitBreaker(options.circuitBreakerThreshold(), options.circuitBreakerOpenTime());
+    }
+
+    public static CompletableFuture<ManagementClient> create(Vertx vertx, ProtonConnection connection, ArtemisOptions options) {
+        CompletableFuture<ManagementClient> promise = new CompletableFuture<>();
+        connection.sessionOpenHandler(ProtonSession::open);
+        ProtonSender sender = connection.createSender(MANAGEMENT_ADDRESS);
+        ManagementClient client = new ManagementClient(vertx, vertx.getOrCreateContext(), sender, options);
+        sender.openHandler(result -> {
+            ProtonReceiver receiver = connection.createReceiver(MANAGEMENT_ADDRESS);
+            Source source = new Source();
+            source.setDynamic(true);
+            receiver.setSource(source);
+            receiver.openHandler(h -> {
+                if (h.succeeded()) {
+                    client.replyTo = h.result().getRemoteSource().getAddress();
+                    promise.complete(client);
+                } else {
+                    promise.completeExceptionally(h.cause());
+                }
+            });
+            receiver.handler(((protonDelivery, message) -> {
+                ProtonHelper.accepted(protonDelivery, true);
+                client.handleReply(message);
+            }));
+            receiver.closeHandler(h -> client.failAll(new IllegalStateException("Management link closed")));
+            receiver.open();
+        });
+        sender.closeHandler(h -> client.failAll(new IllegalStateException("Management link closed")));
+        sender.open();
+        return promise;
+    }
+
+    public String getReplyTo() {
+        return replyTo;
+    }
+
+    public boolean isOpen() {
+        return sender.isOpen();
+    }
+
+    /**
+     * Whether the management link is open and the broker has been answering requests.
+     */
+    public boolean isAvailable() {
+        return sender.isOpen() && circuitBreaker.isClosed();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * The time in milliseconds from sending a request until its reply is received.
+     */
+    public Histogram getRoundTripTimes() {
+        return roundTripTimes;
+    }
+
+    /**
+     * The timeout in milliseconds currently used for requests.
+     */
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Send a management request. The returned future completes with the reply, or exceptionally if no reply
+     * arrived within the request timeout, the circuit breaker is open or the broker reports that the operation
+     * failed. May be called from any thread.
+     */
+    public CompletableFuture<Message> request(Message message) {
+        PendingRequest request = new PendingRequest(message);
+        context.runOnContext(v -> submit(request));
+        return request.response;
+    }
+
+    private void submit(PendingRequest request) {
+        if (!sender.isOpen()) {
+            request.response.completeExceptionally(new IllegalStateException("Management link closed"));
+        } else if (inFlight.size() < maxInFlight) {
+            send(request);
+        } else {
+            waiting.add(request);
+        }
+    }
+
+    private void send(PendingRequest request) {
+        if (!circuitBreaker.allowRequest(System.currentTimeMillis())) {
+            request.response.completeExceptionally(new IllegalStateException("Broker is not answering management requests"));
+            return;
+        }
+        String id = idPrefix + nextId++;
+        request.message.setMessageId(id);
+        request.message.setCorrelationId(id);
+        request.message.setReplyTo(replyTo);
+        request.timeout = requestTimeout;
+        request.timerId = vertx.setTimer(request.timeout, timerId -> expire(id));
+        request.sentAt = System.currentTimeMillis();
+        inFlight.put(id, request);
+        sender.send(request.message);
+    }
+
+    private void handleReply(Message reply) {
+        Object correlationId = reply.getCorrelationId();
+        if (correlationId == null) {
+            // Every request carries an id, so a reply without one can not be matched to a request safely
+            log.warn("Discarding management reply without correlation id");
+            return;
+        }
+        PendingRequest request = inFlight.remove(correlationId.toString());
+        if (request == null) {
+            log.debug("Discarding reply with unknown correlation id " + correlationId);
+            return;
+        }
+        vertx.cancelTimer(request.timerId);
+        long roundTripTime = System.currentTimeMillis() - request.sentAt;
+        roundTripTimes.record(roundTripTime);
+        updateRequestTimeout(roundTripTime);
+        circuitBreaker.recordSuccess();
+
+        Object succeeded = reply.getApplicationProperties() == null ? null : reply.getApplicationProperties().getValue().get("_AMQ_OperationSucceeded");
+        if (Boolean.FALSE.equals(succeeded)) {
+            Object body = reply.getBody() instanceof AmqpValue ? ((AmqpValue) reply.getBody()).getValue() : null;
+            request.response.completeExceptionally(new ManagementException("Management operation failed: " + body));
+        } else {
+            request.response.complete(reply);
+        }
+        sendWaiting();
+    }
+
+    /**
+     * Update the round trip time estimates and derive the request timeout from them, as done for the TCP
+     * retransmission timeout in RFC 6298.
+     */
+    private void updateRequestTimeout(long roundTripTime) {
+        if (smoothedRoundTripTime < 0) {
+            smoothedRoundTripTime = roundTripTime;
+            roundTripTimeVariation = roundTripTime / 2.0;
+        } else {
+            roundTripTimeVariation = 0.75 * roundTripTimeVariation + 0.25 * Math.abs(smoothedRoundTripTime - roundTripTime);
+            smoothedRoundTripTime = 0.875 * smoothedRoundTripTime + 0.125 * roundTripTime;
+        }
+        long timeout = (long) Math.ceil(smoothedRoundTripTime + 4 * roundTripTimeVariation);
+        requestTimeout = Math.max(minRequestTimeout, Math.min(maxRequestTimeout, timeout));
+    }
+
+    private void expire(String id) {
+        PendingRequest request = inFlight.remove(id);
+        if (request != null) {
+            request.response.completeExceptionally(new TimeoutException("Timed out waiting for reply to " + id + " after " + request.timeout + " ms"));
+            // Back off until a reply is received, in case the broker is just slower than it used to be
+            requestTimeout = Math.min(maxRequestTimeout, request.timeout * 2);
+            if (circuitBreaker.recordFailure(System.currentTimeMillis())) {
+                log.warn("No reply to " + circuitBreaker.getFailureThreshold() + " consecutive management requests, failing requests until the broker answers again");
+                failWaiting(new IllegalStateException("Broker is not answering management requests"));
+            }
+            sendWaiting();
+        }
+    }
+
+    private void sendWaiting() {
+        while (inFlight.size() < maxInFlight && !waiting.isEmpty()) {
+            send(waiting.poll());
+        }
+    }
+
+    private void failAll(Exception cause) {
+        for (PendingRequest request : inFlight.values()) {
+            vertx.cancelTimer(request.timerId);
+            request.response.completeExceptionally(cause);
+        }
+        inFlight.clear();
+        failWaiting(cause);
+    }
+
+    private void failWaiting(Exception cause) {
+        for (PendingRequest request : waiting) {
+            request.response.completeExceptionally(cause);
+        }
+        waiting.clear();
+    }
+
+    private static class PendingRequest {
+        private final Message message;
+        private final CompletableFuture<Message> response = new CompletableFuture<>();
+        private long timerId;
+        private long sentAt;
+        private long timeout;
+
+        private PendingRequest(Message message) {
+            this.message = message;
+        }
+    }
+}
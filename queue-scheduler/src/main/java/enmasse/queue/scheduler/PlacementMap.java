@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Map from address to the brokers holding its queue, across all groups. The map is updated from the group lanes as
+ * queues are deployed and deleted, and may be read from any thread without waiting for them. As with the index it is
+ * maintained from, it reflects operations as soon as they are issued.
+ */
+public class PlacementMap {
+    private final Map<String, Location> locations = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    void placed(String groupId, String address, String brokerId) {
+        locations.compute(address, (a, location) -> {
+            if (location == null || !location.groupId.equals(groupId)) {
+                return new Location(groupId, Collections.singletonList(brokerId));
+            } else if (location.brokers.contains(brokerId)) {
+                return location;
+            }
+            List<String> brokers = new ArrayList<>(location.brokers);
+            brokers.add(brokerId);
+            return new Location(groupId, Collections.unmodifiableList(brokers));
+        });
+        changed(address);
+    }
+
+    void removed(String groupId, String address, String brokerId) {
+        locations.computeIfPresent(address, (a, location) -> {
+            if (!location.groupId.equals(groupId) || !location.brokers.contains(brokerId)) {
+                return location;
+            } else if (location.brokers.size() == 1) {
+                return null;
+            }
+            List<String> brokers = new ArrayList<>(location.brokers);
+            brokers.remove(brokerId);
+            return new Location(groupId, Collections.unmodifiableList(brokers));
+        });
+        changed(address);
+    }
+
+    private void changed(String address) {
+        for (Consumer<String> listener : listeners) {
+            listener.accept(address);
+        }
+    }
+
+    /**
+     * The location of an address, or null if the address is not placed on any broker.
+     */
+    public Location lookup(String address) {
+        return locations.get(address);
+    }
+
+    /**
+     * The locations of the addresses that are placed, in the order given.
+     */
+    public Map<String, Location> lookup(Collection<String> addresses) {
+        Map<String, Location> result = new LinkedHashMap<>();
+        for (String address : addresses) {
+            Location location = locations.get(address);
+            if (location != null) {
+                result.put(address, location);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The locations of all addresses that are placed.
+     */
+    public Map<String, Location> snapshot() {
+        return new LinkedHashMap<>(locations);
+    }
+
+    public int size() {
+        return locations.size();
+    }
+
+    /**
+     * Add a listener called with the address whenever the location of an address may have changed. The listener is
+     * called from the group lanes, and must not block.
+     */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<String> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The group of an address and the brokers holding its queue.
+     */
+    public static final class Location {
+        private final String groupId;
+        private final List<String> brokers;
+
+        private Location(String groupId, List<String> brokers) {
+            this.groupId = groupId;
+            this.brokers = brokers;
+        }
+
+        public String getGroupId() {
+            return groupId;
+        }
+
+        public List<String> getBrokers() {
+            return brokers;
+        }
+
+        @Override
+        public String toString() {
+            return groupId + ":" + brokers;
+        }
+    }
+}
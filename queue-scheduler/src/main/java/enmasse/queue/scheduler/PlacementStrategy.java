@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.Map;
+
+/**
+ * Strategy for deciding on which broker of a group a queue should be placed.
+ */
+public interface PlacementStrategy {
+    /**
+     * Select the broker to place an address on.
+     *
+     * @param address The address to place.
+     * @param brokers The brokers of the group, keyed by broker id. Never empty.
+     * @return The id of the selected broker.
+     */
+    String selectBroker(String address, Map<String, Broker> brokers);
+
+    /**
+     * Select the broker to place an address on, using the index of the group. Strategies that can make use of the
+     * index to avoid looking at every broker should override this.
+     *
+     * @param address The address to place.
+     * @param index The index of the group. Contains at least one available broker.
+     * @return The id of the selected broker, which must be available.
+     */
+    default String selectBroker(String address, BrokerIndex index) {
+        return selectBroker(address, index.getAvailableBrokers());
+    }
+}
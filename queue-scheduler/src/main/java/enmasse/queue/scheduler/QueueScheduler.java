@@ -24,10 +24,16 @@ import org.apache.qpid.proton.amqp.Symbol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Acts as an arbiter deciding in which broker a queue should run.
@@ -35,17 +41,64 @@ import java.util.concurrent.TimeUnit;
 public class QueueScheduler extends AbstractVerticle implements ConfigListener {
     private static final Logger log = LoggerFactory.getLogger(QueueScheduler.class.getName());
     private static final Symbol groupSymbol = Symbol.getSymbol("qd.route-container-group");
+    private static final long DEFAULT_BROKER_SETTLE_TIME = 200;
+    private static final long DEFAULT_BROKER_ATTACH_TIMEOUT = 30000;
+    private static final long DEFAULT_BROKER_CHECK_INTERVAL = 5000;
 
-    private final SchedulerState schedulerState = new SchedulerState();
+    private final ExecutorService laneExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+        Thread thread = new Thread(runnable, "scheduler-lane");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final SchedulerState schedulerState;
+    private final SchedulerMetrics metrics = new SchedulerMetrics();
+    private final UpdateCoalescer<Map<String, AddressChange>> addressUpdates;
     private final BrokerFactory brokerFactory;
     private ProtonSaslAuthenticatorFactory saslAuthenticatorFactory;
     private volatile ProtonServer server;
+    private Rebalancer rebalancer;
+    private long rebalanceInterval;
+    private long rebalanceTimer = -1;
+    private long brokerSettleTime = DEFAULT_BROKER_SETTLE_TIME;
+    private long brokerAttachTimeout = DEFAULT_BROKER_ATTACH_TIMEOUT;
+    private long brokerCheckInterval = DEFAULT_BROKER_CHECK_INTERVAL;
+    private long brokerCheckTimer = -1;
+    private TraceRecorder traceRecorder;
+    // Brokers attached within the settle time, only accessed from the context of this verticle
+    private final Map<String, Map<String, Broker>> pendingBrokers = new HashMap<>();
+    // Group and broker ids of attached brokers, only accessed from the context of this verticle
+    private final Set<String> attachedBrokers = new HashSet<>();
+    // Brokers recorded as added in the trace, so that only their removal is recorded
+    private final Set<String> tracedBrokers = new HashSet<>();
 
     private final int port;
 
     public QueueScheduler(BrokerFactory brokerFactory, int listenPort) {
+        this(brokerFactory, listenPort, new LeastQueuesPlacement());
+    }
+
+    public QueueScheduler(BrokerFactory brokerFactory, int listenPort, PlacementStrategy placementStrategy) {
+        this(brokerFactory, listenPort, placementStrategy, FanOut.DEFAULT_MAX_PARALLELISM);
+    }
+
+    /**
+     * @param maxFanOut The maximum number of broker operations run concurrently when deploying or deleting an
+     *                  address on all brokers of a group.
+     */
+    public QueueScheduler(BrokerFactory brokerFactory, int listenPort, PlacementStrategy placementStrategy, int maxFanOut) {
+        this(brokerFactory, listenPort, placementStrategy, maxFanOut, SchedulerState.DEFAULT_PLACEMENT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param placementChunkSize The maximum number of added addresses of a group placed at a time, before other
+     *                           changes to the group get their turn.
+     */
+    public QueueScheduler(BrokerFactory brokerFactory, int listenPort, PlacementStrategy placementStrategy, int maxFanOut, int placementChunkSize) {
         this.brokerFactory = brokerFactory;
         this.port = listenPort;
+        this.schedulerState = new SchedulerState(laneExecutor, new TimedPlacement(placementStrategy, metrics.getPlacementLatency()), new FanOut(maxFanOut), placementChunkSize);
+        // Pending changes are merged per group, so a group changed several times is only updated once
+        this.addressUpdates = new UpdateCoalescer<>(this::applyAddressChanges, QueueScheduler::mergeChanges);
     }
 
     // This is a temporary hack until Artemis can support sasl anonymous
@@ -53,6 +106,51 @@ public class QueueScheduler extends AbstractVerticle implements ConfigListener {
         this.saslAuthenticatorFactory = saslAuthenticatorFactory;
     }
 
+    /**
+     * Periodically move queues of shared groups to spread them evenly across brokers.
+     */
+    public void enableRebalancing(long interval, double movesPerSecond, int maxConcurrentMoves) {
+        this.rebalancer = new Rebalancer(schedulerState, movesPerSecond, maxConcurrentMoves);
+        this.rebalanceInterval = interval;
+    }
+
+    /**
+     * Set the time to wait for more brokers of a group to attach before distributing addresses to them.
+     */
+    public void setBrokerSettleTime(long brokerSettleTime) {
+        this.brokerSettleTime = brokerSettleTime;
+    }
+
+    /**
+     * Set the time a broker connection is given to attach before it is closed, so that the broker connects again.
+     */
+    public void setBrokerAttachTimeout(long brokerAttachTimeout) {
+        this.brokerAttachTimeout = brokerAttachTimeout;
+    }
+
+    /**
+     * Set the interval at which queues that failed to deploy are placed on the brokers available.
+     */
+    public void setBrokerCheckInterval(long brokerCheckInterval) {
+        this.brokerCheckInterval = brokerCheckInterval;
+    }
+
+    /**
+     * Set the number of brokers the address of a group with a single address is placed on, rather than all brokers
+     * of the group. Must be set before the scheduler is started.
+     */
+    public void setScalableReplicas(int scalableReplicas) {
+        schedulerState.setScalableReplicas(scalableReplicas);
+    }
+
+    /**
+     * Record the address changes and broker changes seen by the scheduler, so that they can be replayed in the
+     * placement simulator. Must be set before the scheduler is started.
+     */
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
     private static String getGroupId(ProtonConnection connection) {
         Map<Symbol, Object> connectionProperties = connection.getRemoteProperties();
         if (connectionProperties.containsKey(groupSymbol)) {
@@ -72,14 +170,12 @@ public class QueueScheduler extends AbstractVerticle implements ConfigListener {
                 connectionOpened(connection);
             }).closeHandler(conn -> {
                 log.info("Broker connection " + connection.getRemoteContainer() + " closed");
-                executeBlocking(() -> schedulerState.brokerRemoved(getGroupId(connection), connection.getRemoteContainer()),
-                        "Error removing broker");
+                brokerRemoved(connection);
                 connection.close();
                 connection.disconnect();
             }).disconnectHandler(protonConnection -> {
                 log.info("Broker connection " + connection.getRemoteContainer() + " disconnected");
-                executeBlocking(() -> schedulerState.brokerRemoved(getGroupId(connection), connection.getRemoteContainer()),
-                        "Error removing broker");
+                brokerRemoved(connection);
                 connection.disconnect();
             });
 
@@ -89,6 +185,10 @@ public class QueueScheduler extends AbstractVerticle implements ConfigListener {
 
             connection.open();
         });
+        if (rebalancer != null) {
+            rebalanceTimer = vertx.setPeriodic(rebalanceInterval, id -> rebalancer.rebalance());
+        }
+        brokerCheckTimer = vertx.setPeriodic(brokerCheckInterval, id -> execute(schedulerState::checkBrokers, "Error placing queues on available brokers"));
         server.listen(port, event -> {
             if (event.succeeded()) {
                 log.info("QueueScheduler is up and running");
@@ -100,8 +200,74 @@ public class QueueScheduler extends AbstractVerticle implements ConfigListener {
 
     private void connectionOpened(ProtonConnection connection) {
         log.info("Connection opened from " + connection.getRemoteContainer());
-        Future<Broker> broker = brokerFactory.createBroker(connection);
-        executeBlocking(() -> schedulerState.brokerAdded(getGroupId(connection), connection.getRemoteContainer(), broker.get(30, TimeUnit.SECONDS)),"Error adding broker");
+        long attachTimer = vertx.setTimer(brokerAttachTimeout, id -> {
+            log.error("Error adding broker", new TimeoutException("Timed out attaching broker " + connection.getRemoteContainer()));
+            closeConnection(connection);
+        });
+        brokerFactory.createBroker(connection).whenComplete((broker, cause) -> context.runOnContext(v -> {
+            if (!vertx.cancelTimer(attachTimer)) {
+                return;
+            }
+            if (cause != null) {
+                log.error("Error adding broker", cause);
+                closeConnection(connection);
+            } else if (connection.isDisconnected()) {
+                log.info("Broker " + connection.getRemoteContainer() + " disconnected while attaching, ignoring");
+            } else {
+                brokerAttached(getGroupId(connection), connection.getRemoteContainer(), broker);
+            }
+        }));
+    }
+
+    /**
+     * Close the connection of a broker that could not be attached, so that it does not look connected while the
+     * scheduler does not manage it. The broker attaches again when it reconnects.
+     */
+    private static void closeConnection(ProtonConnection connection) {
+        connection.close();
+        connection.disconnect();
+    }
+
+    /**
+     * Collect brokers attaching to a group within the settle time, so that they are added in a single distribution
+     * pass rather than one pass per broker.
+     */
+    private void brokerAttached(String groupId, String brokerId, Broker broker) {
+        attachedBrokers.add(groupId + "/" + brokerId);
+        metrics.brokerAttached();
+        Map<String, Broker> pending = pendingBrokers.get(groupId);
+        if (pending == null) {
+            pending = new LinkedHashMap<>();
+            pendingBrokers.put(groupId, pending);
+            vertx.setTimer(brokerSettleTime, id -> {
+                Map<String, Broker> brokers = pendingBrokers.remove(groupId);
+                if (!brokers.isEmpty()) {
+                    if (traceRecorder != null) {
+                        Map<String, Set<String>> queues = new LinkedHashMap<>();
+                        brokers.forEach((pendingId, pendingBroker) -> queues.put(pendingId, new HashSet<>(pendingBroker.getQueueNames())));
+                        traceRecorder.brokersAdded(groupId, queues);
+                        brokers.keySet().forEach(pendingId -> tracedBrokers.add(groupId + "/" + pendingId));
+                    }
+                    execute(() -> schedulerState.brokersAdded(groupId, brokers), "Error adding brokers");
+                }
+            });
+        }
+        pending.put(brokerId, broker);
+    }
+
+    private void brokerRemoved(ProtonConnection connection) {
+        String groupId = getGroupId(connection);
+        if (attachedBrokers.remove(groupId + "/" + connection.getRemoteContainer())) {
+            metrics.brokerDetached();
+        }
+        Map<String, Broker> pending = pendingBrokers.get(groupId);
+        if (pending != null) {
+            pending.remove(connection.getRemoteContainer());
+        }
+        if (traceRecorder != null && tracedBrokers.remove(groupId + "/" + connection.getRemoteContainer())) {
+            traceRecorder.brokerRemoved(groupId, connection.getRemoteContainer());
+        }
+        execute(() -> schedulerState.brokerRemoved(groupId, connection.getRemoteContainer()), "Error removing broker");
     }
 
     @Override
@@ -110,30 +276,67 @@ public class QueueScheduler extends AbstractVerticle implements ConfigListener {
         if (server != null) {
             server.close();
         }
+        if (rebalanceTimer != -1) {
+            vertx.cancelTimer(rebalanceTimer);
+        }
+        if (brokerCheckTimer != -1) {
+            vertx.cancelTimer(brokerCheckTimer);
+        }
+        laneExecutor.shutdown();
+        if (traceRecorder != null) {
+            try {
+                traceRecorder.close();
+            } catch (IOException e) {
+                log.warn("Error closing scheduler trace", e);
+            }
+        }
     }
 
     @Override
-    public void addressesChanged(Map<String, Set<String>> addressMap) {
-        executeBlocking(() -> schedulerState.addressesChanged(addressMap), "Error handling address change");
+    public void addressesChanged(Map<String, AddressChange> changes) {
+        if (traceRecorder != null) {
+            traceRecorder.addressesChanged(changes);
+        }
+        addressUpdates.submit(changes);
     }
 
-    private void executeBlocking(Task task, String errorMessage) {
-        vertx.executeBlocking(promise -> {
-            try {
-                task.run();
-                promise.complete();
-            } catch (Exception e) {
-                promise.fail(e);
-            }
-        }, true, result -> {
-            if (result.failed()) {
-                log.error(errorMessage, result.cause());
+    private CompletionStage<Void> applyAddressChanges(Map<String, AddressChange> changes) {
+        long start = System.currentTimeMillis();
+        return schedulerState.addressesChanged(changes).whenComplete((v, cause) ->
+                metrics.getAddressUpdateLatency().record(System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Whether a change of the address configuration is waiting for the previous one to be applied.
+     */
+    public boolean hasPendingAddressChanges() {
+        return addressUpdates.hasPending();
+    }
+
+    public SchedulerState getSchedulerState() {
+        return schedulerState;
+    }
+
+    public SchedulerMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static Map<String, AddressChange> mergeChanges(Map<String, AddressChange> pending, Map<String, AddressChange> latest) {
+        Map<String, AddressChange> merged = new LinkedHashMap<>(pending);
+        latest.forEach((groupId, change) -> merged.merge(groupId, change, AddressChange::merge));
+        return merged;
+    }
+
+    private void execute(Task task, String errorMessage) {
+        task.run().whenComplete((result, cause) -> {
+            if (cause != null) {
+                log.error(errorMessage, cause);
             }
         });
     }
 
     private interface Task {
-        void run() throws Exception;
+        CompletionStage<Void> run();
     }
 
     public int getPort() {
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Periodically spreads the queues of shared groups evenly across the brokers of each group. Queue moves are limited
+ * to a maximum rate and a maximum number of concurrent moves across all groups, so that scaling out a group does not
+ * flood the brokers with management operations.
+ */
+public class Rebalancer implements GroupState.MoveLimiter {
+    private static final Logger log = LoggerFactory.getLogger(Rebalancer.class.getName());
+    private final SchedulerState schedulerState;
+    private final double movesPerSecond;
+    private final int maxConcurrentMoves;
+    private final Semaphore concurrentMoves;
+    private final Set<String> rebalancing = ConcurrentHashMap.newKeySet();
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public Rebalancer(SchedulerState schedulerState, double movesPerSecond, int maxConcurrentMoves) {
+        this.schedulerState = schedulerState;
+        this.movesPerSecond = movesPerSecond;
+        this.maxConcurrentMoves = maxConcurrentMoves;
+        this.concurrentMoves = new Semaphore(maxConcurrentMoves);
+        this.tokens = maxConcurrentMoves;
+    }
+
+    /**
+     * Start a rebalancing round for every group that is not already being rebalanced.
+     */
+    public void rebalance() {
+        for (String groupId : schedulerState.getGroupIds()) {
+            if (rebalancing.add(groupId)) {
+                schedulerState.rebalance(groupId, this).whenComplete((v, cause) -> {
+                    rebalancing.remove(groupId);
+                    if (cause != null) {
+                        log.warn("Error rebalancing group " + groupId, cause);
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public boolean tryStartMove() {
+        if (!concurrentMoves.tryAcquire()) {
+            return false;
+        }
+        if (!tryTakeToken()) {
+            concurrentMoves.release();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void moveCompleted() {
+        concurrentMoves.release();
+    }
+
+    private synchronized boolean tryTakeToken() {
+        long now = System.nanoTime();
+        tokens = Math.min(maxConcurrentMoves, tokens + (now - lastRefill) * movesPerSecond / 1_000_000_000);
+        lastRefill = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+}
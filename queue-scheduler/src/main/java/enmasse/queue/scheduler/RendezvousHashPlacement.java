@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.Map;
+
+/**
+ * Places an address using rendezvous (highest random weight) hashing. Every broker is given a score derived from
+ * the address and the broker id, and the broker with the highest score is selected. The placement only depends on
+ * the address and the set of broker ids, so it can be recomputed by anyone knowing the brokers of a group, and when a
+ * broker joins or leaves only the addresses placed on that broker change placement.
+ */
+public class RendezvousHashPlacement implements PlacementStrategy {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    @Override
+    public String selectBroker(String address, Map<String, Broker> brokers) {
+        long addressHash = hash(FNV_OFFSET_BASIS, address);
+        String selected = null;
+        long selectedScore = 0;
+        for (String brokerId : brokers.keySet()) {
+            long score = score(addressHash, brokerId);
+            if (selected == null || score > selectedScore || (score == selectedScore && brokerId.compareTo(selected) < 0)) {
+                selected = brokerId;
+                selectedScore = score;
+            }
+        }
+        return selected;
+    }
+
+    private static long score(long addressHash, String brokerId) {
+        // Separate the address from the broker id so that different pairs can not hash the same input
+        long hash = (addressHash ^ 0xff) * FNV_PRIME;
+        return mix(hash(hash, brokerId));
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // Finalizer from MurmurHash3, spreading the FNV hash over all bits
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics recorded by the queue scheduler.
+ */
+public class SchedulerMetrics {
+    private final Histogram placementLatency = new Histogram(1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 5000, 10000);
+    private final Histogram addressUpdateLatency = Histogram.latency();
+    private final AtomicLong brokersAttached = new AtomicLong();
+    private final AtomicLong brokersDetached = new AtomicLong();
+
+    /**
+     * The time in microseconds taken by the placement strategy to select a broker for an address.
+     */
+    public Histogram getPlacementLatency() {
+        return placementLatency;
+    }
+
+    /**
+     * The time in milliseconds from starting to apply a change of the address configuration until all groups have
+     * been updated.
+     */
+    public Histogram getAddressUpdateLatency() {
+        return addressUpdateLatency;
+    }
+
+    public void brokerAttached() {
+        brokersAttached.incrementAndGet();
+    }
+
+    public void brokerDetached() {
+        brokersDetached.incrementAndGet();
+    }
+
+    public long getBrokersAttached() {
+        return brokersAttached.get();
+    }
+
+    public long getBrokersDetached() {
+        return brokersDetached.get();
+    }
+}
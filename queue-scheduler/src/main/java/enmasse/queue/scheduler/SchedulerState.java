@@ -15,140 +15,211 @@
  */
 
 package enmasse.queue.scheduler;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 /**
- * Contains the mapping from queue to broker and ensures there is only one modifying the state at a time.
+ * Contains the mapping from queue to broker, partitioned by group. Changes to a group are applied one at a time in
+ * the lane of that group, while different groups are processed concurrently on the executor.
+ *
+ * Addresses added in bulk are placed in chunks at a lower priority than other changes to the group, so that deletes
+ * and broker changes submitted later do not wait for the whole bulk to be placed. A group is removed once it has no
+ * brokers and no addresses left.
  */
 public class SchedulerState {
     private static final Logger log = LoggerFactory.getLogger(SchedulerState.class.getName());
-    private final Map<String, Map<String, Broker>> brokerGroupMap = new LinkedHashMap<>();
-    private final Map<String, Set<String>> addressMap = new LinkedHashMap<>();
-
+    public static final int DEFAULT_PLACEMENT_CHUNK_SIZE = 1000;
+    private final Executor executor;
+    private final PlacementStrategy placementStrategy;
+    private final FanOut fanOut;
+    private final int placementChunkSize;
+    private volatile int scalableReplicas = GroupState.ALL_BROKERS;
+    private final Map<String, Group> groups = new ConcurrentHashMap<>();
+    private final PlacementMap placementMap = new PlacementMap();
+
+    public SchedulerState(Executor executor, PlacementStrategy placementStrategy) {
+        this(executor, placementStrategy, new FanOut(FanOut.DEFAULT_MAX_PARALLELISM));
+    }
 
-    public synchronized void addressesChanged(Map<String, Set<String>> updatedMap) {
-        Set<String> removedGroups = new HashSet<>(addressMap.keySet());
-        removedGroups.removeAll(updatedMap.keySet());
-        removedGroups.forEach(addressMap::remove);
+    public SchedulerState(Executor executor, PlacementStrategy placementStrategy, FanOut fanOut) {
+        this(executor, placementStrategy, fanOut, DEFAULT_PLACEMENT_CHUNK_SIZE);
+    }
 
-        updatedMap.forEach(this::groupUpdated);
+    /**
+     * @param placementChunkSize The maximum number of added addresses placed in one operation of a group.
+     */
+    public SchedulerState(Executor executor, PlacementStrategy placementStrategy, FanOut fanOut, int placementChunkSize) {
+        if (placementChunkSize < 1) {
+            throw new IllegalArgumentException("Placement chunk size must be positive, was " + placementChunkSize);
+        }
+        this.executor = executor;
+        this.placementStrategy = placementStrategy;
+        this.fanOut = fanOut;
+        this.placementChunkSize = placementChunkSize;
     }
 
-    public synchronized void groupUpdated(String groupId, Set<String> addresses) {
-        Set<String> existing = addressMap.getOrDefault(groupId, Collections.emptySet());
+    /**
+     * Set the number of brokers the address of a group with a single address is placed on, unless the address has
+     * a replication factor configured. Only applies to groups created afterwards.
+     */
+    public void setScalableReplicas(int scalableReplicas) {
+        this.scalableReplicas = scalableReplicas;
+    }
 
-        Set<String> removed = new HashSet<>(existing);
-        removed.removeAll(addresses);
-        if (!removed.isEmpty()) {
-            deleteAddresses(groupId, removed);
-        }
+    public CompletionStage<Void> addressesChanged(Map<String, AddressChange> changes) {
+        List<CompletionStage<Void>> results = new ArrayList<>();
+        changes.forEach((groupId, change) -> {
+            Group group = acquireGroup(groupId, true);
+            results.add(group.lane.submit(() -> group.state.addressesChanged(change, placementChunkSize))
+                    .whenComplete((v, cause) -> {
+                        placePending(groupId, group);
+                        releaseGroup(groupId, group);
+                    }));
+        });
+        return GroupState.allOf(results);
+    }
 
-        Set<String> added = new HashSet<>(addresses);
-        added.removeAll(existing);
-        if (!added.isEmpty()) {
-            addAddresses(groupId, addresses, added);
-        }
+    public CompletionStage<Void> groupUpdated(String groupId, Set<String> addresses) {
+        return submit(groupId, true, state -> state.addressesUpdated(addresses));
+    }
 
-        addressMap.put(groupId, addresses);
-        log.info("Updated addresses for " + groupId + ": " + addresses);
+    public CompletionStage<Void> brokerAdded(String groupId, String brokerId, Broker broker) {
+        return submit(groupId, true, state -> state.brokerAdded(brokerId, broker));
     }
 
+    public CompletionStage<Void> brokersAdded(String groupId, Map<String, Broker> brokers) {
+        return submit(groupId, true, state -> state.brokersAdded(brokers));
+    }
 
-    public synchronized void brokerAdded(String groupId, String brokerId, Broker broker) {
-        if (!brokerGroupMap.containsKey(groupId)) {
-            brokerGroupMap.put(groupId, new LinkedHashMap<>());
-        }
+    public CompletionStage<Void> brokerRemoved(String groupId, String brokerId) {
+        return submit(groupId, false, state -> state.brokerRemoved(brokerId));
+    }
 
-        if (brokerGroupMap.get(groupId).containsKey(brokerId)) {
-            throw new IllegalArgumentException("Broker with id " + brokerId + " already exists in group " + groupId);
-        }
-        brokerGroupMap.get(groupId).put(brokerId, broker);
-
-        Set<String> addresses = addressMap.getOrDefault(groupId, Collections.emptySet());
-        log.info("Broker " + brokerId + " in group " + groupId + " was added, distributing addresses: " + addresses);
-        if (addresses.size() == 1) {
-            broker.deployQueue(addresses.iterator().next());
-        } else {
-            distributeAddressesByNumQueues(groupId, addresses);
+    /**
+     * Let every group place the queues that could not be deployed on the brokers currently available.
+     */
+    public CompletionStage<Void> checkBrokers() {
+        List<CompletionStage<Void>> results = new ArrayList<>();
+        for (String groupId : groups.keySet()) {
+            results.add(submit(groupId, false, GroupState::brokersChecked));
         }
+        return GroupState.allOf(results);
     }
 
-    public synchronized void brokerRemoved(String groupId, String brokerId) {
-        Map<String, Broker> brokerMap = brokerGroupMap.get(groupId);
-        if (!brokerMap.containsKey(brokerId)) {
-            log.info("Broker was already removed, ignoring");
-            return;
-        }
-        brokerMap.remove(brokerId);
-        if (brokerMap.isEmpty()) {
-            brokerGroupMap.remove(groupId);
-        }
-        Set<String> addresses = addressMap.getOrDefault(groupId, Collections.emptySet());
-        // If colocated queues, ensure missing queues are recreated on other brokers.
-        if (addresses.size() > 1) {
-            distributeAddressesByNumQueues(groupId, addresses);
-        }
-        log.info("Broker " +  brokerId + " in group " + groupId + " was removed");
+    public Set<String> getGroupIds() {
+        return Collections.unmodifiableSet(groups.keySet());
     }
 
-    private void addAddresses(String groupId, Set<String> addresses, Set<String> added) {
+    /**
+     * The state of a group, for reading only. Returns null if the group is not known.
+     */
+    public GroupState getGroupState(String groupId) {
+        Group group = groups.get(groupId);
+        return group == null ? null : group.state;
+    }
 
-        // TODO: Fetch this information from somewhere, but assume > 1 address means shared flavor
-        if (addresses.size() > 1) {
-            distributeAddressesByNumQueues(groupId, added);
-        } else {
-            distributeAddressesAll(groupId, added);
-        }
+    /**
+     * The brokers holding the queue of each address, across all groups.
+     */
+    public PlacementMap getPlacementMap() {
+        return placementMap;
     }
 
-    private void distributeAddressesByNumQueues(String groupId, Set<String> addresses) {
-        Map<String, Broker> brokerMap = brokerGroupMap.get(groupId);
-        if (brokerMap == null) {
-            return;
-        }
+    public int getPendingOperations(String groupId) {
+        Group group = groups.get(groupId);
+        return group == null ? 0 : group.lane.getPendingOperations();
+    }
 
-        Set<String> addressesToDeploy = new HashSet<>(addresses);
+    public CompletionStage<Void> rebalance(String groupId, GroupState.MoveLimiter limiter) {
+        return submit(groupId, false, state -> state.rebalance(limiter));
+    }
 
-        // Remove addresses that are already distributed. This is to avoid changes in broker list to affect where queues are scheduler
-        for (Broker broker : brokerMap.values()) {
-            addressesToDeploy.removeAll(broker.getQueueNames());
+    /**
+     * Queue the placement of the next chunk of addresses added in bulk, unless it is already queued. Must be called
+     * while the group is acquired.
+     */
+    private void placePending(String groupId, Group group) {
+        if (group.state.getNumPendingPlacement() == 0 || !group.placementQueued.compareAndSet(false, true)) {
+            return;
         }
-
-        PriorityQueue<Broker> brokerByNumQueues = new PriorityQueue<>(brokerMap.size(), (a, b) -> {
-            if (a.getNumQueues() < b.getNumQueues()) {
-                return -1;
-            } else if (a.getNumQueues() > b.getNumQueues()) {
-                return 1;
-            } else {
-                return 0;
+        acquireGroup(groupId, false);
+        group.lane.submit(GroupLane.Priority.BULK, () -> {
+            group.placementQueued.set(false);
+            return group.state.placePending(placementChunkSize);
+        }).whenComplete((v, cause) -> {
+            if (cause != null) {
+                log.warn("Error placing addresses", cause);
             }
+            placePending(groupId, group);
+            releaseGroup(groupId, group);
         });
+    }
 
-        brokerByNumQueues.addAll(brokerMap.values());
-
-        for (String address : addressesToDeploy) {
-            Broker broker = brokerByNumQueues.poll();
-            broker.deployQueue(address);
-            brokerByNumQueues.offer(broker);
+    /**
+     * Run an operation in the lane of a group, creating the group if asked to. The operation is skipped if the group
+     * does not exist and is not created.
+     */
+    private CompletionStage<Void> submit(String groupId, boolean create, Function<GroupState, CompletionStage<Void>> operation) {
+        Group group = acquireGroup(groupId, create);
+        if (group == null) {
+            return CompletableFuture.completedFuture(null);
         }
+        return group.lane.submit(() -> operation.apply(group.state))
+                .whenComplete((v, cause) -> releaseGroup(groupId, group));
     }
 
-    private void distributeAddressesAll(String groupId, Set<String> addresses) {
-        for (String address : addresses) {
-            for (Broker  broker : brokerGroupMap.getOrDefault(groupId, Collections.emptyMap()).values()) {
-                broker.deployQueue(address);
+    /**
+     * Mark a group as in use, so that it is not removed before it is released.
+     */
+    private Group acquireGroup(String groupId, boolean create) {
+        return groups.compute(groupId, (id, group) -> {
+            if (group == null) {
+                if (!create) {
+                    return null;
+                }
+                group = new Group(new GroupLane(executor), new GroupState(id, placementStrategy, fanOut, scalableReplicas, placementMap));
             }
-        }
+            group.users++;
+            return group;
+        });
     }
 
-    private void deleteAddresses(String groupId, Set<String> removed) {
-        for (Broker broker : brokerGroupMap.getOrDefault(groupId, Collections.emptyMap()).values()) {
-            for (String address : removed) {
-                broker.deleteQueue(address);
+    /**
+     * Release a group acquired earlier, removing it once it is no longer in use and has no brokers and no addresses.
+     */
+    private void releaseGroup(String groupId, Group group) {
+        groups.computeIfPresent(groupId, (id, current) -> {
+            if (current != group) {
+                return current;
+            }
+            group.users--;
+            if (group.users == 0 && group.state.isEmpty()) {
+                log.info("Group " + groupId + " has no brokers and no addresses, removing it");
+                return null;
             }
+            return group;
+        });
+    }
+
+    private static class Group {
+        private final GroupLane lane;
+        private final GroupState state;
+        private final AtomicBoolean placementQueued = new AtomicBoolean(false);
+        // Number of operations using the group, only accessed while computing its entry in the group map
+        private int users = 0;
+
+        private Group(GroupLane lane, GroupState state) {
+            this.lane = lane;
+            this.state = state;
         }
     }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the time taken by another placement strategy to select a broker.
+ */
+public class TimedPlacement implements PlacementStrategy {
+    private final PlacementStrategy delegate;
+    private final Histogram latency;
+    private final TimeUnit unit;
+
+    public TimedPlacement(PlacementStrategy delegate, Histogram latency) {
+        this(delegate, latency, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @param unit The unit the time taken is recorded in.
+     */
+    public TimedPlacement(PlacementStrategy delegate, Histogram latency, TimeUnit unit) {
+        this.delegate = delegate;
+        this.latency = latency;
+        this.unit = unit;
+    }
+
+    @Override
+    public String selectBroker(String address, Map<String, Broker> brokers) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectBroker(address, brokers);
+        } finally {
+            latency.record(unit.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }
+    }
+
+    @Override
+    public String selectBroker(String address, BrokerIndex index) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectBroker(address, index);
+        } finally {
+            latency.record(unit.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An event seen by the scheduler, as recorded in a trace. Each event is encoded as a single line of JSON.
+ */
+public final class TraceEvent {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public enum Type {
+        ADDRESSES_CHANGED, BROKERS_ADDED, BROKER_REMOVED
+    }
+
+    private final long time;
+    private final Type type;
+    private final String groupId;
+    private final AddressChange change;
+    private final Map<String, Set<String>> brokers;
+
+    private TraceEvent(long time, Type type, String groupId, AddressChange change, Map<String, Set<String>> brokers) {
+        this.time = time;
+        this.type = type;
+        this.groupId = groupId;
+        this.change = change;
+        this.brokers = brokers;
+    }
+
+    public static TraceEvent addressesChanged(long time, String groupId, AddressChange change) {
+        return new TraceEvent(time, Type.ADDRESSES_CHANGED, groupId, change, Collections.emptyMap());
+    }
+
+    /**
+     * @param brokers The queues present on each added broker when it was added, by broker id.
+     */
+    public static TraceEvent brokersAdded(long time, String groupId, Map<String, Set<String>> brokers) {
+        return new TraceEvent(time, Type.BROKERS_ADDED, groupId, null, brokers);
+    }
+
+    public static TraceEvent brokerRemoved(long time, String groupId, String brokerId) {
+        return new TraceEvent(time, Type.BROKER_REMOVED, groupId, null, Collections.singletonMap(brokerId, Collections.emptySet()));
+    }
+
+    /**
+     * The time of the event in milliseconds since the start of the trace.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    /**
+     * The change of an {@link Type#ADDRESSES_CHANGED} event.
+     */
+    public AddressChange getChange() {
+        return change;
+    }
+
+    /**
+     * The brokers of a {@link Type#BROKERS_ADDED} or {@link Type#BROKER_REMOVED} event, along with the queues
+     * present on added brokers.
+     */
+    public Map<String, Set<String>> getBrokers() {
+        return brokers;
+    }
+
+    public String encode() {
+        ObjectNode root = mapper.createObjectNode();
+        root.put("time", time);
+        root.put("type", type.name());
+        root.put("group", groupId);
+        if (change != null) {
+            root.put("reset", change.isReset());
+            encodeSet(root.putArray("added"), change.getAdded());
+            encodeSet(root.putArray("removed"), change.getRemoved());
+            ObjectNode replicas = root.putObject("replicas");
+            change.getReplicas().forEach(replicas::put);
+        } else {
+            ObjectNode brokersNode = root.putObject("brokers");
+            brokers.forEach((brokerId, queues) -> encodeSet(brokersNode.putArray(brokerId), queues));
+        }
+        return root.toString();
+    }
+
+    public static TraceEvent decode(String line) throws IOException {
+        JsonNode root = mapper.readTree(line);
+        long time = root.get("time").asLong();
+        Type type = Type.valueOf(root.get("type").asText());
+        String groupId = root.get("group").asText();
+        if (type == Type.ADDRESSES_CHANGED) {
+            Map<String, Integer> replicas = new HashMap<>();
+            Iterator<Map.Entry<String, JsonNode>> it = root.get("replicas").fields();
+            while (it.hasNext()) {
+                Map.Entry<String, JsonNode> entry = it.next();
+                replicas.put(entry.getKey(), entry.getValue().asInt());
+            }
+            AddressChange change = AddressChange.of(decodeSet(root.get("added")), decodeSet(root.get("removed")), replicas);
+            if (root.get("reset").asBoolean()) {
+                change = AddressChange.groupRemoved().merge(change);
+            }
+            return addressesChanged(time, groupId, change);
+        }
+
+        Map<String, Set<String>> brokers = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> it = root.get("brokers").fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            brokers.put(entry.getKey(), decodeSet(entry.getValue()));
+        }
+        return new TraceEvent(time, type, groupId, null, brokers);
+    }
+
+    private static void encodeSet(ArrayNode node, Set<String> values) {
+        for (String value : values) {
+            node.add(value);
+        }
+    }
+
+    private static Set<String> decodeSet(JsonNode node) {
+        Set<String> values = new LinkedHashSet<>();
+        for (JsonNode value : node) {
+            values.add(value.asText());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the address changes and broker changes seen by the scheduler to a trace, which may be replayed against
+ * other placement strategies. Events are written by a background thread, so that recording never blocks the caller.
+ * Recording is best effort: events are dropped while the writer is behind, and once writing fails, no more events
+ * are recorded.
+ */
+public class TraceRecorder implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(TraceRecorder.class.getName());
+    public static final int DEFAULT_CAPACITY = 10000;
+    private final Writer writer;
+    private final BlockingQueue<TraceEvent> events;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writerThread;
+    private final long startTime = System.currentTimeMillis();
+    private volatile boolean closed = false;
+    private volatile boolean failed = false;
+
+    public TraceRecorder(Writer writer) {
+        this(writer, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of events that may wait to be written before new events are dropped.
+     */
+    public TraceRecorder(Writer writer, int capacity) {
+        this.writer = writer;
+        this.events = new ArrayBlockingQueue<>(capacity);
+        this.writerThread = new Thread(this::writeEvents, "trace-recorder");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    public static TraceRecorder create(Path file) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new TraceRecorder(writer);
+    }
+
+    public void addressesChanged(Map<String, AddressChange> changes) {
+        long time = elapsed();
+        changes.forEach((groupId, change) -> record(TraceEvent.addressesChanged(time, groupId, change)));
+    }
+
+    public void brokersAdded(String groupId, Map<String, Set<String>> brokers) {
+        record(TraceEvent.brokersAdded(elapsed(), groupId, brokers));
+    }
+
+    public void brokerRemoved(String groupId, String brokerId) {
+        record(TraceEvent.brokerRemoved(elapsed(), groupId, brokerId));
+    }
+
+    /**
+     * The number of events dropped because the writer was behind.
+     */
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    private long elapsed() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private void record(TraceEvent event) {
+        if (failed || closed) {
+            return;
+        }
+        if (!events.offer(event) && dropped.getAndIncrement() == 0) {
+            log.warn("Scheduler trace writer is behind, dropping events");
+        }
+    }
+
+    private void writeEvents() {
+        try {
+            while (!closed || !events.isEmpty()) {
+                TraceEvent event = events.poll(100, TimeUnit.MILLISECONDS);
+                if (event == null) {
+                    continue;
+                }
+                writer.write(event.encode());
+                writer.write('\n');
+                if (events.isEmpty()) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Error writing scheduler trace, no longer recording", e);
+            failed = true;
+            events.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write the events recorded so far and close the trace.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.get() > 0) {
+            log.warn("Dropped " + dropped.get() + " scheduler trace events");
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * Applies updates one at a time. Updates arriving while an update is being applied are merged into a single pending
+ * update, which is applied once the current one has completed.
+ */
+public class UpdateCoalescer<T> {
+    private static final Logger log = LoggerFactory.getLogger(UpdateCoalescer.class.getName());
+    private final Function<T, CompletionStage<Void>> applier;
+    private final BinaryOperator<T> merger;
+    private boolean applying = false;
+    private T pending;
+
+    /**
+     * @param applier Applies an update, returning a stage completing once the update has been applied.
+     * @param merger Merges a pending update with a newer one.
+     */
+    public UpdateCoalescer(Function<T, CompletionStage<Void>> applier, BinaryOperator<T> merger) {
+        this.applier = applier;
+        this.merger = merger;
+    }
+
+    public void submit(T update) {
+        synchronized (this) {
+            if (applying) {
+                pending = pending == null ? update : merger.apply(pending, update);
+                return;
+            }
+            applying = true;
+        }
+        apply(update);
+    }
+
+    /**
+     * Whether an update is waiting for the current one to be applied.
+     */
+    public synchronized boolean hasPending() {
+        return pending != null;
+    }
+
+    private void apply(T update) {
+        CompletionStage<Void> result;
+        try {
+            result = applier.apply(update);
+        } catch (RuntimeException e) {
+            log.error("Error applying update", e);
+            applyNext();
+            return;
+        }
+        result.whenComplete((v, cause) -> {
+            if (cause != null) {
+                log.error("Error applying update", cause);
+            }
+            applyNext();
+        });
+    }
+
+    private void applyNext() {
+        T next;
+        synchronized (this) {
+            next = pending;
+            pending = null;
+            if (next == null) {
+                applying = false;
+                return;
+            }
+        }
+        apply(next);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import java.util.Map;
+
+/**
+ * Places an address on the broker with the most headroom, computed as a weighted sum of the number of queues and
+ * the sampled load of each broker. The number of queues is always current, so addresses placed between two load
+ * samples are spread across brokers rather than piled onto the one that looked least loaded at the last sample.
+ */
+public class WeightedLoadPlacement implements PlacementStrategy {
+    private final double queueWeight;
+    private final double messageWeight;
+    private final double consumerWeight;
+    private final double memoryWeight;
+
+    public WeightedLoadPlacement() {
+        // By default, 10000 stored messages, 100 consumers or 10 MB of address memory weigh as much as one queue
+        this(1.0, 1.0 / 10000, 1.0 / 100, 1.0 / (10 * 1024 * 1024));
+    }
+
+    public WeightedLoadPlacement(double queueWeight, double messageWeight, double consumerWeight, double memoryWeight) {
+        this.queueWeight = queueWeight;
+        this.messageWeight = messageWeight;
+        this.consumerWeight = consumerWeight;
+        this.memoryWeight = memoryWeight;
+    }
+
+    @Override
+    public String selectBroker(String address, Map<String, Broker> brokers) {
+        String selected = null;
+        double selectedCost = Double.MAX_VALUE;
+        for (Map.Entry<String, Broker> entry : brokers.entrySet()) {
+            double cost = cost(entry.getValue());
+            if (selected == null || cost < selectedCost) {
+                selected = entry.getKey();
+                selectedCost = cost;
+            }
+        }
+        return selected;
+    }
+
+    private double cost(Broker broker) {
+        BrokerLoad load = broker.getLoad();
+        return queueWeight * broker.getNumQueues()
+                + messageWeight * load.getMessageCount()
+                + consumerWeight * load.getConsumerCount()
+                + memoryWeight * load.getAddressMemoryUsage();
+    }
+}
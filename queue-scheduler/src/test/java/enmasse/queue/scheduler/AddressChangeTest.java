@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.junit.Test;
+import org.mockito.internal.util.collections.Sets;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class AddressChangeTest {
+    @Test
+    public void testMergeCancelsOpposingChanges() {
+        AddressChange earlier = AddressChange.of(Sets.newSet("queue1"), Sets.newSet("queue2"));
+        AddressChange later = AddressChange.of(Sets.newSet("queue2", "queue3"), Sets.newSet("queue1"));
+
+        AddressChange merged = earlier.merge(later);
+        assertFalse(merged.isReset());
+        assertThat(merged.getAdded(), is(Collections.singleton("queue3")));
+        assertTrue(merged.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void testMergeReplicas() {
+        Map<String, Integer> replicas = new HashMap<>();
+        replicas.put("queue1", 2);
+        replicas.put("queue2", 3);
+        AddressChange earlier = AddressChange.of(Sets.newSet("queue1", "queue2"), Collections.emptySet(), replicas);
+        AddressChange later = AddressChange.of(Collections.emptySet(), Sets.newSet("queue2"), Collections.singletonMap("queue1", 4));
+
+        AddressChange merged = earlier.merge(later);
+        assertThat(merged.getAdded(), is(Collections.singleton("queue1")));
+        assertThat(merged.getReplicas(), is(Collections.singletonMap("queue1", 4)));
+        assertFalse(AddressChange.of(Collections.emptySet(), Collections.emptySet(), Collections.singletonMap("queue1", 0)).isEmpty());
+    }
+
+    @Test
+    public void testMergeAfterGroupRemoved() {
+        AddressChange merged = AddressChange.added(Sets.newSet("queue1")).merge(AddressChange.groupRemoved());
+        assertTrue(merged.isReset());
+        assertTrue(merged.getAdded().isEmpty());
+
+        merged = merged.merge(AddressChange.added(Sets.newSet("queue2")));
+        assertTrue(merged.isReset());
+        assertThat(merged.getAdded(), is(Collections.singleton("queue2")));
+        assertTrue(merged.getRemoved().isEmpty());
+    }
+}
@@ -22,9 +22,14 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
 
+import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -41,24 +46,101 @@ public class ArtemisTest {
     }
 
     @After
-    public void teardown() {
+    public void teardown() throws Exception {
         vertx.close();
+        server.stop();
     }
 
     @Test
     public void testManagement() throws InterruptedException, ExecutionException, TimeoutException {
+        Artemis artemis = connect();
+        Set<String> queueNames = artemis.getQueueNames();
+
+        await(artemis.deployQueue("queue1"));
+        await(artemis.deployQueue("queue2"));
+
+        assertThat(artemis.getNumQueues(), is(2L));
+
+        await(artemis.deleteQueue("queue1"));
+        assertThat(artemis.getNumQueues(), is(1L));
+        assertThat(artemis.getQueueNames(), hasItem("queue2"));
+        assertThat(queueNames, hasItem("queue2"));
+        assertThat(queueNames, not(hasItem("queue1")));
+    }
+
+    @Test
+    public void testQueuesReconciled() throws InterruptedException, ExecutionException, TimeoutException {
+        Artemis first = connect();
+        await(first.deployQueue("queue1"));
+
+        Artemis second = connect();
+        assertThat(second.getQueueNames(), hasItem("queue1"));
+
+        await(second.deployQueue("queue2"));
+        assertThat(first.getNumQueues(), is(1L));
+
+        await(first.reconcileQueues());
+        assertThat(first.getNumQueues(), is(2L));
+        assertThat(first.getQueueNames(), hasItem("queue2"));
+    }
+
+    @Test
+    public void testConcurrentRequests() throws InterruptedException, ExecutionException, TimeoutException {
+        Artemis artemis = connect();
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            results.add(artemis.deployQueue("queue" + i).toCompletableFuture());
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(1, TimeUnit.MINUTES);
+
+        assertThat(artemis.getNumQueues(), is(50L));
+        await(artemis.reconcileQueues());
+        assertThat(artemis.getNumQueues(), is(50L));
+    }
+
+    @Test
+    public void testLoadSampled() throws InterruptedException, ExecutionException, TimeoutException {
+        Artemis artemis = connect();
+        await(artemis.deployQueue("queue1"));
+
+        BrokerLoad load = artemis.sampleLoad().toCompletableFuture().get(1, TimeUnit.MINUTES);
+        assertThat(load.getMessageCount(), is(0L));
+        assertThat(artemis.getLoad(), is(load));
+    }
+
+    @Test
+    public void testNotificationsUpdateQueues() throws Exception {
+        Artemis artemis = connect();
+        waitForQueues(artemis, 0);
+
+        server.createQueue("queue1");
+        waitForQueues(artemis, 1);
+        assertThat(artemis.getQueueNames(), hasItem("queue1"));
+
+        server.destroyQueue("queue1");
+        waitForQueues(artemis, 0);
+    }
+
+    private static void waitForQueues(Artemis artemis, long numQueues) throws InterruptedException {
+        long endTime = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (System.currentTimeMillis() < endTime && artemis.getNumQueues() != numQueues) {
+            Thread.sleep(100);
+        }
+        assertThat(artemis.getNumQueues(), is(numQueues));
+    }
+
+    private static void await(CompletionStage<Void> stage) throws InterruptedException, ExecutionException, TimeoutException {
+        stage.toCompletableFuture().get(1, TimeUnit.MINUTES);
+    }
+
+    private Artemis connect() throws InterruptedException, ExecutionException, TimeoutException {
         ProtonClient client = ProtonClient.create(vertx);
-        CompletableFuture<Future<Broker>> promise = new CompletableFuture<>();
+        CompletableFuture<CompletionStage<Broker>> promise = new CompletableFuture<>();
         client.connect("localhost", 12345, h -> {
             assertTrue(h.succeeded());
             promise.complete(Artemis.create(vertx, h.result().open()));
         });
 
-        Artemis artemis = (Artemis)promise.get().get(10, TimeUnit.SECONDS);
-
-        artemis.deployQueue("queue1");
-        artemis.deployQueue("queue2");
-
-        assertThat(artemis.getNumQueues(), is(2L));
+        return (Artemis)promise.get().toCompletableFuture().get(10, TimeUnit.SECONDS);
     }
 }
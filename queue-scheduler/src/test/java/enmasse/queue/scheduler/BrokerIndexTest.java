@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.junit.Test;
+import org.mockito.internal.util.collections.Sets;
+
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class BrokerIndexTest {
+    @Test
+    public void testLeastLoadedFollowsPlacements() {
+        BrokerIndex index = new BrokerIndex();
+        assertThat(index.getLeastLoaded(), nullValue());
+
+        index.brokerAdded("br1", null, Sets.newSet("queue1", "queue2"));
+        index.brokerAdded("br2", null, Collections.emptySet());
+        assertThat(index.getLeastLoaded(), is("br2"));
+
+        index.placed("queue3", "br2");
+        index.placed("queue4", "br2");
+        index.placed("queue5", "br2");
+        assertThat(index.getLeastLoaded(), is("br1"));
+
+        index.removed("queue3", "br2");
+        index.removed("queue4", "br2");
+        assertThat(index.getLeastLoaded(), is("br2"));
+        assertThat(index.getBroker("queue5"), is("br2"));
+        assertFalse(index.isPlaced("queue3"));
+    }
+
+    @Test
+    public void testBrokerRemoved() {
+        BrokerIndex index = new BrokerIndex();
+        index.brokerAdded("br1", null, Sets.newSet("queue1", "queue2"));
+        index.brokerAdded("br2", null, Sets.newSet("queue3"));
+
+        assertThat(index.brokerRemoved("br1"), is(Sets.newSet("queue1", "queue2")));
+        assertFalse(index.isPlaced("queue1"));
+        assertThat(index.getLeastLoaded(), is("br2"));
+
+        index.brokerRemoved("br2");
+        assertThat(index.getLeastLoaded(), nullValue());
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    public void testAddressOnSeveralBrokers() {
+        BrokerIndex index = new BrokerIndex();
+        index.brokerAdded("br1", null, Sets.newSet("queue1"));
+        index.brokerAdded("br2", null, Sets.newSet("queue1"));
+        assertThat(index.getBrokersHolding("queue1").size(), is(2));
+
+        index.brokerRemoved(index.getBroker("queue1"));
+        assertTrue(index.isPlaced("queue1"));
+        assertThat(index.getBrokersHolding("queue1").size(), is(1));
+
+        index.removed("queue1", index.getBroker("queue1"));
+        assertFalse(index.isPlaced("queue1"));
+        assertThat(index.getBrokersHolding("queue1").isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000);
+        assertFalse(breaker.recordFailure(0));
+        assertFalse(breaker.recordFailure(0));
+        breaker.recordSuccess();
+        assertFalse(breaker.recordFailure(0));
+        assertFalse(breaker.recordFailure(0));
+        assertTrue(breaker.recordFailure(0));
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertFalse(breaker.allowRequest(500));
+    }
+
+    @Test
+    public void testSingleProbeWhenHalfOpen() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+        assertTrue(breaker.recordFailure(0));
+
+        assertTrue(breaker.allowRequest(1000));
+        assertThat(breaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertFalse(breaker.allowRequest(1000));
+
+        assertTrue(breaker.recordFailure(1500));
+        assertFalse(breaker.allowRequest(2000));
+        assertTrue(breaker.allowRequest(2500));
+
+        breaker.recordSuccess();
+        assertTrue(breaker.isClosed());
+        assertTrue(breaker.allowRequest(2500));
+    }
+}
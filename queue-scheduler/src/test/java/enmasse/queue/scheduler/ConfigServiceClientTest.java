@@ -4,7 +4,11 @@ import io.vertx.core.Vertx;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.internal.util.collections.Sets;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -52,14 +56,79 @@ public class ConfigServiceClientTest {
         assertThat(listener.addressMap.get("group1"), hasItem("queue1"));
         assertThat(listener.addressMap.get("group1"), hasItem("queue2"));
         assertThat(listener.addressMap.get("group2"), hasItem("queue3"));
+
+        listener.changes = null;
+        testConfigServ.deployConfig("{\"queue1\":{\"store_and_forward\":true,\"multicast\":false,\"group_id\":\"group1\"},\"queue3\":{\"store_and_forward\":true,\"multicast\":false,\"group_id\":\"group2\"},\"queue4\":{\"store_and_forward\":true,\"multicast\":false,\"group_id\":\"group2\"}}");
+
+        waitForPort(() -> listener.changes == null ? 0 : 1, 1, TimeUnit.MINUTES);
+        assertThat(listener.changes.size(), is(2));
+        assertThat(listener.changes.get("group1").getRemoved(), hasItem("queue2"));
+        assertThat(listener.changes.get("group2").getAdded(), hasItem("queue4"));
+        assertThat(listener.addressMap.get("group1"), is(Collections.singleton("queue1")));
+        assertThat(listener.addressMap.get("group2").size(), is(2));
+    }
+
+    @Test
+    public void testDiffAddressConfig() {
+        Map<String, Set<String>> previous = new HashMap<>();
+        previous.put("group1", Sets.newSet("queue1", "queue2"));
+        previous.put("group2", Sets.newSet("queue3"));
+        previous.put("group3", Sets.newSet("queue4"));
+
+        Map<String, Set<String>> current = new HashMap<>();
+        current.put("group1", Sets.newSet("queue1", "queue5"));
+        current.put("group2", Sets.newSet("queue3"));
+
+        Map<String, AddressChange> changes = ConfigServiceClient.diffAddressConfig(previous, current);
+        assertThat(changes.size(), is(2));
+        assertThat(changes.get("group1").getAdded(), is(Collections.singleton("queue5")));
+        assertThat(changes.get("group1").getRemoved(), is(Collections.singleton("queue2")));
+        assertTrue(changes.get("group3").isReset());
+        assertTrue(changes.get("group3").getAdded().isEmpty());
+    }
+
+    @Test
+    public void testDiffReplicas() {
+        Map<String, Set<String>> config = new HashMap<>();
+        config.put("group1", Sets.newSet("queue1", "queue2"));
+        config.put("group2", Sets.newSet("queue3"));
+
+        Map<String, Integer> previousReplicas = new HashMap<>();
+        previousReplicas.put("queue1", 3);
+        previousReplicas.put("queue3", 2);
+        Map<String, Integer> currentReplicas = new HashMap<>();
+        currentReplicas.put("queue1", 5);
+        currentReplicas.put("queue3", 2);
+
+        Map<String, AddressChange> changes = ConfigServiceClient.diffAddressConfig(config, config, previousReplicas, currentReplicas);
+        assertThat(changes.size(), is(1));
+        assertThat(changes.get("group1").getReplicas(), is(Collections.singletonMap("queue1", 5)));
+        assertTrue(changes.get("group1").getAdded().isEmpty());
+
+        changes = ConfigServiceClient.diffAddressConfig(config, config, currentReplicas, Collections.emptyMap());
+        assertThat(changes.get("group1").getReplicas(), is(Collections.singletonMap("queue1", 0)));
+        assertThat(changes.get("group2").getReplicas(), is(Collections.singletonMap("queue3", 0)));
     }
 
     private static class TestListener implements ConfigListener {
         public volatile Map<String, Set<String>> addressMap;
+        public volatile Map<String, AddressChange> changes;
 
         @Override
-        public void addressesChanged(Map<String, Set<String>> addressMap) {
-            this.addressMap = addressMap;
+        public synchronized void addressesChanged(Map<String, AddressChange> changes) {
+            Map<String, Set<String>> updated = addressMap == null ? new HashMap<>() : new HashMap<>(addressMap);
+            changes.forEach((groupId, change) -> {
+                Set<String> addresses = change.isReset() ? new HashSet<>() : new HashSet<>(updated.getOrDefault(groupId, Collections.emptySet()));
+                addresses.removeAll(change.getRemoved());
+                addresses.addAll(change.getAdded());
+                if (addresses.isEmpty()) {
+                    updated.remove(groupId);
+                } else {
+                    updated.put(groupId, addresses);
+                }
+            });
+            this.addressMap = updated;
+            this.changes = changes;
         }
     }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FanOutTest {
+    @Test
+    public void testParallelismIsBounded() throws Exception {
+        List<CompletableFuture<Void>> started = new ArrayList<>();
+        List<Supplier<CompletionStage<Void>>> operations = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            operations.add(() -> {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                started.add(future);
+                return future;
+            });
+        }
+
+        CompletableFuture<Void> result = new FanOut(2).run(operations).toCompletableFuture();
+        assertThat(started.size(), is(2));
+
+        started.get(0).complete(null);
+        assertThat(started.size(), is(3));
+
+        for (int i = 1; i < 5; i++) {
+            started.get(i).complete(null);
+        }
+        assertThat(started.size(), is(5));
+        assertTrue(result.isDone());
+        result.get();
+    }
+
+    @Test
+    public void testFailuresAreAggregated() throws Exception {
+        List<Supplier<CompletionStage<Void>>> operations = new ArrayList<>();
+        operations.add(() -> failed("first"));
+        operations.add(() -> CompletableFuture.completedFuture(null));
+        operations.add(() -> failed("second"));
+
+        CompletableFuture<Void> result = new FanOut(1).run(operations).toCompletableFuture();
+        assertTrue(result.isDone());
+        try {
+            result.get();
+            fail("Expected fan out to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(FanOutException.class));
+            FanOutException cause = (FanOutException) e.getCause();
+            assertThat(cause.getNumFailed(), is(2));
+            assertThat(cause.getSuppressed().length, is(1));
+        }
+    }
+
+    @Test
+    public void testManySynchronousOperations() throws Exception {
+        List<Supplier<CompletionStage<Void>>> operations = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            operations.add(() -> CompletableFuture.completedFuture(null));
+        }
+        CompletableFuture<Void> result = new FanOut(4).run(operations).toCompletableFuture();
+        assertFalse(result.isCompletedExceptionally());
+        result.get();
+    }
+
+    private static CompletionStage<Void> failed(String message) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(new IllegalStateException(message));
+        return future;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class GroupLaneTest {
+    @Test
+    public void testBulkOperationsRunLast() {
+        GroupLane lane = new GroupLane(Runnable::run);
+        List<String> started = new ArrayList<>();
+        CompletableFuture<Void> first = new CompletableFuture<>();
+
+        lane.submit(() -> {
+            started.add("first");
+            return first;
+        });
+        lane.submit(GroupLane.Priority.BULK, () -> {
+            started.add("bulk");
+            return CompletableFuture.completedFuture(null);
+        });
+        lane.submit(() -> {
+            started.add("second");
+            return CompletableFuture.completedFuture(null);
+        });
+        assertThat(started, is(Arrays.asList("first")));
+        assertThat(lane.getPendingOperations(), is(3));
+
+        first.complete(null);
+        assertThat(started, is(Arrays.asList("first", "second", "bulk")));
+        assertThat(lane.getPendingOperations(), is(0));
+    }
+
+    @Test
+    public void testFailedOperationDoesNotBlockLane() {
+        GroupLane lane = new GroupLane(Runnable::run);
+        CompletableFuture<Void> result = lane.submit(() -> {
+            throw new IllegalStateException("failed");
+        }).toCompletableFuture();
+        CompletableFuture<Void> next = lane.submit(() -> CompletableFuture.completedFuture(null)).toCompletableFuture();
+
+        assertThat(result.isCompletedExceptionally(), is(true));
+        assertThat(next.isDone(), is(true));
+    }
+}
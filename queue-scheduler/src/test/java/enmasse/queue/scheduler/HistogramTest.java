@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HistogramTest {
+    @Test
+    public void testQuantiles() {
+        Histogram histogram = new Histogram(10, 100, 1000);
+        for (int i = 0; i < 90; i++) {
+            histogram.record(5);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(50);
+        }
+        histogram.record(5000);
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(100L));
+        assertThat(snapshot.getQuantile(0.5), is(10L));
+        assertThat(snapshot.getQuantile(0.99), is(100L));
+        assertThat(snapshot.getQuantile(1.0), is(-1L));
+        assertThat(snapshot.getCounts()[3], is(1L));
+    }
+
+    @Test
+    public void testBoundsAreInclusive() {
+        Histogram histogram = new Histogram(10, 100);
+        histogram.record(10);
+        histogram.record(11);
+        assertThat(histogram.snapshot().getCounts()[0], is(1L));
+        assertThat(histogram.snapshot().getCounts()[1], is(1L));
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonClient;
+import io.vertx.proton.ProtonConnection;
+import io.vertx.proton.ProtonReceiver;
+import io.vertx.proton.ProtonSender;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.message.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static enmasse.queue.scheduler.TestUtils.waitForPort;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+public class LookupServerTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private Vertx vertx;
+    private PlacementMap placementMap;
+    private int port;
+
+    @Before
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        placementMap = new PlacementMap();
+        LookupServer server = new LookupServer(placementMap, 0);
+        TestUtils.deployVerticle(vertx, server);
+        port = waitForPort(server::getPort, 1, TimeUnit.MINUTES);
+    }
+
+    @After
+    public void teardown() {
+        vertx.close();
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        placementMap.placed("group1", "queue1", "br1");
+        placementMap.placed("group1", "queue1", "br2");
+
+        JsonNode reply = decode(request("[\"queue1\",\"queue2\"]"));
+        assertThat(reply.get("queue1").get("group").asText(), is("group1"));
+        assertThat(reply.get("queue1").get("brokers").size(), is(2));
+        assertFalse(reply.get("queue2").has("group"));
+        assertThat(reply.get("queue2").get("brokers").size(), is(0));
+
+        reply = decode(request("queue1"));
+        assertThat(reply.size(), is(1));
+        assertThat(reply.get("queue1").get("brokers").get(0).asText(), is("br1"));
+    }
+
+    @Test
+    public void testChanges() throws Exception {
+        placementMap.placed("group1", "queue1", "br1");
+        ChangeReceiver receiver = subscribeChanges(100);
+
+        JsonNode snapshot = decode(receiver.next());
+        assertThat(snapshot.get("queue1").get("brokers").get(0).asText(), is("br1"));
+
+        placementMap.placed("group1", "queue2", "br1");
+        JsonNode change = decode(receiver.next());
+        assertThat(change.size(), is(1));
+        assertThat(change.get("queue2").get("brokers").get(0).asText(), is("br1"));
+
+        placementMap.removed("group1", "queue1", "br1");
+        change = decode(receiver.next());
+        assertThat(change.get("queue1").get("brokers").size(), is(0));
+    }
+
+    @Test
+    public void testChangesWaitForCredit() throws Exception {
+        for (int i = 0; i < 2500; i++) {
+            placementMap.placed("group1", "queue" + i, "br1");
+        }
+        ChangeReceiver receiver = subscribeChanges(1);
+
+        Set<String> received = new HashSet<>();
+        JsonNode first = decode(receiver.next());
+        assertThat(first.size(), is(1000));
+        first.fieldNames().forEachRemaining(received::add);
+
+        placementMap.placed("group1", "queue1", "br2");
+        assertNull(receiver.messages.poll(500, TimeUnit.MILLISECONDS));
+
+        receiver.flow(10);
+        JsonNode queue1 = first.get("queue1");
+        int numMessages = 1;
+        while (received.size() < 2500) {
+            JsonNode message = decode(receiver.next());
+            numMessages++;
+            message.fieldNames().forEachRemaining(received::add);
+            if (message.has("queue1")) {
+                queue1 = message.get("queue1");
+            }
+        }
+        assertThat(numMessages, is(3));
+        assertThat(queue1.get("brokers").size(), is(2));
+        assertNull(receiver.messages.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testDecodeAddresses() throws Exception {
+        assertThat(LookupServer.decodeAddresses("queue1"), is(Collections.singletonList("queue1")));
+        assertThat(LookupServer.decodeAddresses(" [\"queue1\", \"queue2\"]"), is(Arrays.asList("queue1", "queue2")));
+        assertThat(LookupServer.decodeAddresses("[]").size(), is(0));
+    }
+
+    private Message request(String body) throws Exception {
+        CompletableFuture<Message> reply = new CompletableFuture<>();
+        ProtonClient.create(vertx).connect("localhost", port, result -> {
+            ProtonConnection connection = result.result();
+            connection.open();
+            ProtonReceiver receiver = connection.createReceiver(null);
+            Source source = new Source();
+            source.setDynamic(true);
+            receiver.setSource(source);
+            receiver.handler((delivery, message) -> reply.complete(message));
+            receiver.openHandler(opened -> {
+                ProtonSender sender = connection.createSender(LookupServer.LOOKUP_ADDRESS);
+                sender.open();
+                Message message = Message.Factory.create();
+                message.setMessageId("request1");
+                message.setReplyTo(receiver.getRemoteSource().getAddress());
+                message.setBody(new AmqpValue(body));
+                sender.send(message);
+            });
+            receiver.open();
+        });
+        Message message = reply.get(1, TimeUnit.MINUTES);
+        assertThat(message.getCorrelationId(), is("request1"));
+        return message;
+    }
+
+    private ChangeReceiver subscribeChanges(int credit) throws Exception {
+        ChangeReceiver changeReceiver = new ChangeReceiver();
+        CompletableFuture<Void> opened = new CompletableFuture<>();
+        ProtonClient.create(vertx).connect("localhost", port, result -> {
+            ProtonConnection connection = result.result();
+            connection.open();
+            changeReceiver.context = vertx.getOrCreateContext();
+            changeReceiver.receiver = connection.createReceiver(LookupServer.CHANGES_ADDRESS)
+                    .setPrefetch(0)
+                    .handler((delivery, message) -> changeReceiver.messages.add(message))
+                    .openHandler(attached -> {
+                        changeReceiver.receiver.flow(credit);
+                        opened.complete(null);
+                    });
+            changeReceiver.receiver.open();
+        });
+        opened.get(1, TimeUnit.MINUTES);
+        return changeReceiver;
+    }
+
+    private static JsonNode decode(Message message) throws Exception {
+        return mapper.readTree((String) ((AmqpValue) message.getBody()).getValue());
+    }
+
+    private static class ChangeReceiver {
+        private final BlockingQueue<Message> messages = new LinkedBlockingQueue<>();
+        private volatile Context context;
+        private volatile ProtonReceiver receiver;
+
+        private Message next() throws InterruptedException {
+            Message message = messages.poll(1, TimeUnit.MINUTES);
+            assertNotNull(message);
+            return message;
+        }
+
+        private void flow(int credit) {
+            context.runOnContext(v -> receiver.flow(credit));
+        }
+    }
+}
@@ -16,24 +16,34 @@
 
 package enmasse.queue.scheduler;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonConnection;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.internal.util.collections.Sets;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.*;
 
 import static enmasse.queue.scheduler.TestUtils.waitForPort;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 public class QueueSchedulerTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
 
     private Vertx vertx;
     private TestBrokerFactory brokerFactory;
@@ -57,7 +67,7 @@ public class QueueSchedulerTest {
 
     @Test
     public void testAddressAddedBeforeBroker() throws InterruptedException, ExecutionException, TimeoutException {
-        scheduler.addressesChanged(Collections.singletonMap("br1", Sets.newSet("queue1", "queue2")));
+        scheduler.addressesChanged(Collections.singletonMap("br1", AddressChange.added(Sets.newSet("queue1", "queue2"))));
 
         TestBroker br1 = deployBroker("br1");
 
@@ -69,13 +79,13 @@ public class QueueSchedulerTest {
     @Test
     public void testAddressAdded() throws InterruptedException {
         TestBroker br1 = deployBroker("br1");
-        scheduler.addressesChanged(Collections.singletonMap("br1", Sets.newSet("queue1", "queue2")));
+        scheduler.addressesChanged(Collections.singletonMap("br1", AddressChange.added(Sets.newSet("queue1", "queue2"))));
 
         waitForAddresses(br1, 2);
         assertThat(br1.getQueueNames(), hasItem("queue1"));
         assertThat(br1.getQueueNames(), hasItem("queue2"));
 
-        scheduler.addressesChanged(Collections.singletonMap("br1", Sets.newSet("queue1", "queue2", "queue3")));
+        scheduler.addressesChanged(Collections.singletonMap("br1", AddressChange.added(Sets.newSet("queue3"))));
 
         waitForAddresses(br1, 3);
         assertThat(br1.getQueueNames(), hasItem("queue1"));
@@ -86,12 +96,12 @@ public class QueueSchedulerTest {
     @Test
     public void testAddressRemoved() throws InterruptedException {
         TestBroker br1 = deployBroker("br1");
-        scheduler.addressesChanged(Collections.singletonMap("br1", Sets.newSet("queue1", "queue2")));
+        scheduler.addressesChanged(Collections.singletonMap("br1", AddressChange.added(Sets.newSet("queue1", "queue2"))));
         waitForAddresses(br1, 2);
         assertThat(br1.getQueueNames(), hasItem("queue1"));
         assertThat(br1.getQueueNames(), hasItem("queue2"));
 
-        scheduler.addressesChanged(Collections.singletonMap("br1", Sets.newSet("queue1")));
+        scheduler.addressesChanged(Collections.singletonMap("br1", AddressChange.removed(Sets.newSet("queue2"))));
         waitForAddresses(br1, 1);
         assertThat(br1.getQueueNames(), hasItem("queue1"));
     }
@@ -109,17 +119,17 @@ public class QueueSchedulerTest {
         assertThat(br1.getQueueNames(), hasItem("queue1"));
         assertThat(br2.getQueueNames(), hasItem("queue2"));
 
-        scheduler.addressesChanged(Collections.singletonMap("br2", Sets.newSet("queue2")));
+        scheduler.addressesChanged(Collections.singletonMap("br1", AddressChange.groupRemoved()));
         waitForAddresses(br1, 1);
         waitForAddresses(br2, 1);
         assertThat(br1.getQueueNames(), hasItem("queue1"));
         assertThat(br2.getQueueNames(), hasItem("queue2"));
     }
 
-    private Map<String, Set<String>> createMap(String key1, String key2, String value1, String value2) {
-        Map<String, Set<String>> map = new HashMap<>();
-        map.put(key1, Sets.newSet(value1));
-        map.put(key2, Sets.newSet(value2));
+    private Map<String, AddressChange> createMap(String key1, String key2, String value1, String value2) {
+        Map<String, AddressChange> map = new HashMap<>();
+        map.put(key1, AddressChange.added(Sets.newSet(value1)));
+        map.put(key2, AddressChange.added(Sets.newSet(value2)));
         return map;
     }
 
@@ -156,7 +166,7 @@ public class QueueSchedulerTest {
     @Test
     public void testBrokerReconnected() throws InterruptedException, TimeoutException, ExecutionException {
         TestBroker br1 = deployBroker("br1");
-        scheduler.addressesChanged(Collections.singletonMap("br1", Sets.newSet("queue1")));
+        scheduler.addressesChanged(Collections.singletonMap("br1", AddressChange.added(Sets.newSet("queue1"))));
 
         waitForAddresses(br1, 1);
         assertThat(br1.getQueueNames(), hasItem("queue1"));
@@ -168,6 +178,83 @@ public class QueueSchedulerTest {
         assertThat(br1.getQueueNames(), hasItem("queue1"));
     }
 
+    @Test
+    public void testAssignmentReported() throws InterruptedException {
+        TestBroker br1 = deployBroker("br1");
+        scheduler.addressesChanged(Collections.singletonMap("br1", AddressChange.added(Sets.newSet("queue1", "queue2"))));
+        waitForAddresses(br1, 2);
+
+        HTTPServer httpServer = new HTTPServer(scheduler, 0);
+        JsonNode assignment = httpServer.encodeAssignment();
+        assertThat(assignment.get("br1").get("brokers").get("br1").size(), is(2));
+        assertThat(assignment.get("br1").get("unassigned").size(), is(0));
+
+        JsonNode metrics = httpServer.encodeMetrics();
+        assertThat(metrics.get("brokersAttached").asLong(), is(1L));
+        assertThat(metrics.get("groups").get("br1").get("brokers").get("br1").get("queues").asInt(), is(2));
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        PlacementMap placementMap = scheduler.getSchedulerState().getPlacementMap();
+        placementMap.placed("group1", "queue1", "br1");
+        placementMap.placed("group1", "queue2", "br2");
+        HTTPServer httpServer = new HTTPServer(scheduler, 0);
+        TestUtils.deployVerticle(vertx, httpServer);
+        int httpPort = waitForPort(httpServer::getPort, 1, TimeUnit.MINUTES);
+
+        HttpURLConnection get = (HttpURLConnection) new URL("http://localhost:" + httpPort + "/lookup?address=queue1&address=queue3").openConnection();
+        assertThat(get.getResponseCode(), is(200));
+        JsonNode locations = mapper.readTree(get.getInputStream());
+        assertThat(locations.get("queue1").get("group").asText(), is("group1"));
+        assertThat(locations.get("queue1").get("brokers").get(0).asText(), is("br1"));
+        assertThat(locations.get("queue3").get("brokers").size(), is(0));
+
+        locations = mapper.readTree(post(httpPort, "[\"queue2\"]").getInputStream());
+        assertThat(locations.size(), is(1));
+        assertThat(locations.get("queue2").get("brokers").get(0).asText(), is("br2"));
+
+        assertThat(post(httpPort, "[\"queue2\"").getResponseCode(), is(400));
+    }
+
+    private static HttpURLConnection post(int port, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/lookup").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection;
+    }
+
+    @Test
+    public void testConnectionClosedWhenAttachTimesOut() throws Exception {
+        CompletableFuture<ProtonConnection> attaching = new CompletableFuture<>();
+        QueueScheduler stalled = new QueueScheduler(connection -> {
+            attaching.complete(connection);
+            return new CompletableFuture<>();
+        }, 0);
+        stalled.setBrokerAttachTimeout(100);
+        StringWriter trace = new StringWriter();
+        TraceRecorder traceRecorder = new TraceRecorder(trace);
+        stalled.setTraceRecorder(traceRecorder);
+        TestUtils.deployVerticle(vertx, stalled);
+        int port = waitForPort(() -> stalled.getPort(), 1, TimeUnit.MINUTES);
+
+        TestUtils.deployVerticle(vertx, new TestBroker("br1", "localhost", port));
+        ProtonConnection connection = attaching.get(1, TimeUnit.MINUTES);
+        long endTime = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (System.currentTimeMillis() < endTime && !connection.isDisconnected()) {
+            Thread.sleep(100);
+        }
+        assertTrue(connection.isDisconnected());
+
+        // The broker was never added, so its removal is not traced either
+        Thread.sleep(1000);
+        traceRecorder.close();
+        assertThat(trace.toString(), is(""));
+    }
+
     private static void waitForAddresses(TestBroker broker, long numAddresses) throws InterruptedException {
         waitForAddresses(broker, numAddresses, 1, TimeUnit.MINUTES);
     }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RendezvousHashPlacementTest {
+    private final RendezvousHashPlacement placement = new RendezvousHashPlacement();
+
+    @Test
+    public void testPlacementIsIndependentOfBrokerOrder() {
+        Map<String, Broker> brokers = createBrokers(10);
+        Map<String, Broker> reversed = new LinkedHashMap<>();
+        for (int i = 9; i >= 0; i--) {
+            reversed.put("broker" + i, brokers.get("broker" + i));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            String address = "queue" + i;
+            assertThat(placement.selectBroker(address, reversed), is(placement.selectBroker(address, brokers)));
+        }
+    }
+
+    @Test
+    public void testBrokerAddedMovesFewAddresses() {
+        Map<String, Broker> brokers = createBrokers(10);
+        Map<String, String> before = place(1000, brokers);
+
+        brokers.put("broker10", new TestBroker("broker10", "localhost", 0));
+        Map<String, String> after = place(1000, brokers);
+
+        int moved = 0;
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                assertThat(entry.getValue(), is("broker10"));
+                moved++;
+            }
+        }
+        assertTrue("Moved " + moved + " addresses", moved > 40 && moved < 150);
+    }
+
+    @Test
+    public void testBrokerRemovedOnlyMovesItsAddresses() {
+        Map<String, Broker> brokers = createBrokers(10);
+        Map<String, String> before = place(1000, brokers);
+
+        brokers.remove("broker3");
+        Map<String, String> after = place(1000, brokers);
+
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            if (!before.get(entry.getKey()).equals("broker3")) {
+                assertThat(entry.getValue(), is(before.get(entry.getKey())));
+            }
+        }
+    }
+
+    private Map<String, String> place(int numAddresses, Map<String, Broker> brokers) {
+        Map<String, String> placements = new HashMap<>();
+        for (int i = 0; i < numAddresses; i++) {
+            String address = "queue" + i;
+            placements.put(address, placement.selectBroker(address, brokers));
+        }
+        return placements;
+    }
+
+    private static Map<String, Broker> createBrokers(int numBrokers) {
+        Map<String, Broker> brokers = new LinkedHashMap<>();
+        for (int i = 0; i < numBrokers; i++) {
+            String id = "broker" + i;
+            brokers.put(id, new TestBroker(id, "localhost", 0));
+        }
+        return brokers;
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.internal.util.collections.Sets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+public class SchedulerStateTest {
+    private ExecutorService executor;
+    private SchedulerState state;
+
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool(2);
+        state = new SchedulerState(executor, new LeastQueuesPlacement());
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSlowGroupDoesNotBlockOtherGroups() throws Exception {
+        StalledBroker stalled = new StalledBroker();
+        TestBroker br2 = new TestBroker("br2", "localhost", 0);
+
+        await(state.brokerAdded("group1", "br1", stalled));
+        await(state.brokerAdded("group2", "br2", br2));
+
+        CompletionStage<Void> group1Updated = state.groupUpdated("group1", Sets.newSet("queue1", "queue2"));
+        CompletionStage<Void> group1UpdatedAgain = state.groupUpdated("group1", Sets.newSet("queue1", "queue2", "queue3"));
+        await(state.groupUpdated("group2", Sets.newSet("queue4", "queue5")));
+
+        assertThat(br2.getNumQueues(), is(2L));
+        assertThat(br2.getQueueNames(), hasItem("queue4"));
+        assertFalse(group1Updated.toCompletableFuture().isDone());
+        assertFalse(group1UpdatedAgain.toCompletableFuture().isDone());
+        assertThat(stalled.getNumQueues(), is(2L));
+
+        stalled.release();
+        await(group1UpdatedAgain);
+        assertThat(stalled.getNumQueues(), is(3L));
+    }
+
+    @Test
+    public void testBrokersAddedInOnePass() throws Exception {
+        await(state.groupUpdated("group1", Sets.newSet("queue1", "queue2", "queue3", "queue4")));
+
+        Map<String, Broker> brokers = new LinkedHashMap<>();
+        TestBroker br1 = new TestBroker("br1", "localhost", 0);
+        TestBroker br2 = new TestBroker("br2", "localhost", 0);
+        brokers.put("br1", br1);
+        brokers.put("br2", br2);
+        await(state.brokersAdded("group1", brokers));
+
+        assertThat(br1.getNumQueues(), is(2L));
+        assertThat(br2.getNumQueues(), is(2L));
+    }
+
+    @Test
+    public void testRebalance() throws Exception {
+        TestBroker br1 = new TestBroker("br1", "localhost", 0);
+        TestBroker br2 = new TestBroker("br2", "localhost", 0);
+        await(state.brokerAdded("group1", "br1", br1));
+        await(state.groupUpdated("group1", Sets.newSet("queue1", "queue2", "queue3", "queue4", "queue5", "queue6")));
+        await(state.brokerAdded("group1", "br2", br2));
+        assertThat(br1.getNumQueues(), is(6L));
+        assertThat(br2.getNumQueues(), is(0L));
+
+        CountingLimiter limiter = new CountingLimiter(1);
+        await(state.rebalance("group1", limiter));
+        assertThat(limiter.started, is(1));
+        assertThat(br1.getNumQueues(), is(5L));
+        assertThat(br2.getNumQueues(), is(1L));
+
+        limiter = new CountingLimiter(10);
+        await(state.rebalance("group1", limiter));
+        assertThat(limiter.started, is(2));
+        assertThat(br1.getNumQueues(), is(3L));
+        assertThat(br2.getNumQueues(), is(3L));
+    }
+
+    @Test
+    public void testRebalanceKeepsSourceQueuesUntilDrained() throws Exception {
+        TestBroker br1 = new TestBroker("br1", "localhost", 0);
+        TestBroker br2 = new TestBroker("br2", "localhost", 0);
+        Set<String> addresses = Sets.newSet("queue1", "queue2", "queue3", "queue4", "queue5", "queue6");
+        await(state.brokerAdded("group1", "br1", br1));
+        await(state.groupUpdated("group1", addresses));
+        await(state.brokerAdded("group1", "br2", br2));
+        for (String address : addresses) {
+            br1.setMessageCount(address, 5);
+        }
+
+        CountingLimiter limiter = new CountingLimiter(10);
+        await(state.rebalance("group1", limiter));
+        assertThat(limiter.started, is(3));
+        assertThat(br1.getNumQueues(), is(6L));
+        assertThat(br2.getNumQueues(), is(3L));
+        for (String address : br2.getQueueNames()) {
+            assertThat(state.getPlacementMap().lookup(address).getBrokers().size(), is(2));
+        }
+
+        // The queues being drained no longer count towards the share of br1
+        limiter = new CountingLimiter(10);
+        await(state.rebalance("group1", limiter));
+        assertThat(limiter.started, is(0));
+        await(state.checkBrokers());
+        assertThat(br1.getNumQueues(), is(6L));
+
+        for (String address : addresses) {
+            br1.setMessageCount(address, 0);
+        }
+        await(state.checkBrokers());
+        assertThat(br1.getNumQueues(), is(3L));
+        await(state.checkBrokers());
+        for (String address : addresses) {
+            assertThat(state.getPlacementMap().lookup(address).getBrokers().size(), is(1));
+        }
+    }
+
+    @Test
+    public void testUnavailableBrokerIsNotGivenQueues() throws Exception {
+        FailingBroker br1 = new FailingBroker();
+        TestBroker br2 = new TestBroker("br2", "localhost", 0);
+        await(state.brokerAdded("group1", "br1", br1));
+        await(state.brokerAdded("group1", "br2", br2));
+
+        br1.available = false;
+        await(state.groupUpdated("group1", Sets.newSet("queue1", "queue2", "queue3", "queue4")));
+        assertThat(br1.getNumQueues(), is(0L));
+        assertThat(br2.getNumQueues(), is(4L));
+    }
+
+    @Test
+    public void testFailedQueuesPlacedOnAvailableBrokers() throws Exception {
+        FailingBroker br1 = new FailingBroker();
+        TestBroker br2 = new TestBroker("br2", "localhost", 0);
+        await(state.brokerAdded("group1", "br1", br1));
+        await(state.brokerAdded("group1", "br2", br2));
+
+        CompletionStage<Void> updated = state.groupUpdated("group1", Sets.newSet("queue1", "queue2", "queue3", "queue4"));
+        try {
+            await(updated);
+        } catch (ExecutionException e) {
+            // Expected, the deploys on br1 failed
+        }
+        assertThat(br2.getNumQueues(), is(2L));
+
+        br1.available = false;
+        await(state.checkBrokers());
+        assertThat(br2.getNumQueues(), is(4L));
+        assertThat(state.getGroupState("group1").getAssignment().get("br2").size(), is(4));
+    }
+
+    @Test
+    public void testBulkAdditionsPlacedInChunks() throws Exception {
+        state = new SchedulerState(executor, new LeastQueuesPlacement(), new FanOut(FanOut.DEFAULT_MAX_PARALLELISM), 3);
+        TestBroker br1 = new TestBroker("br1", "localhost", 0);
+        await(state.brokerAdded("group1", "br1", br1));
+
+        Set<String> added = new LinkedHashSet<>();
+        for (int i = 0; i < 10; i++) {
+            added.add("queue" + i);
+        }
+        await(state.addressesChanged(Collections.singletonMap("group1", AddressChange.added(added))));
+        await(state.addressesChanged(Collections.singletonMap("group1", AddressChange.removed(Sets.newSet("queue8", "queue9")))));
+
+        long endTime = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (System.currentTimeMillis() < endTime && (state.getPendingOperations("group1") > 0 || state.getGroupState("group1").getNumPendingPlacement() > 0)) {
+            Thread.sleep(10);
+        }
+        assertThat(br1.getNumQueues(), is(8L));
+        assertFalse(br1.getQueueNames().contains("queue9"));
+    }
+
+    @Test
+    public void testBulkAdditionsPlacedInOrder() throws Exception {
+        GroupState groupState = new GroupState("group1", new LeastQueuesPlacement());
+        TestBroker br1 = new TestBroker("br1", "localhost", 0);
+        await(groupState.brokerAdded("br1", br1));
+
+        List<String> added = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            added.add("queue" + i);
+        }
+        await(groupState.addressesChanged(AddressChange.added(new LinkedHashSet<>(added)), 5));
+        assertThat(new ArrayList<>(br1.getQueueNames()), is(added.subList(0, 5)));
+        assertThat(groupState.getNumPendingPlacement(), is(15));
+
+        await(groupState.placePending(5));
+        assertThat(new ArrayList<>(br1.getQueueNames()), is(added.subList(0, 10)));
+    }
+
+    @Test
+    public void testEmptyGroupsRemoved() throws Exception {
+        TestBroker br1 = new TestBroker("br1", "localhost", 0);
+        await(state.brokerAdded("group1", "br1", br1));
+        await(state.addressesChanged(Collections.singletonMap("group1", AddressChange.added(Sets.newSet("queue1", "queue2")))));
+        await(state.brokerAdded("group2", "br2", new TestBroker("br2", "localhost", 0)));
+        assertThat(state.getGroupIds(), is(Sets.newSet("group1", "group2")));
+
+        await(state.addressesChanged(Collections.singletonMap("group1", AddressChange.removed(Sets.newSet("queue1", "queue2")))));
+        assertThat(state.getGroupIds(), is(Sets.newSet("group1", "group2")));
+
+        await(state.brokerRemoved("group1", "br1"));
+        assertThat(state.getGroupIds(), is(Collections.singleton("group2")));
+        assertNull(state.getGroupState("group1"));
+
+        await(state.brokerRemoved("group1", "br1"));
+        await(state.checkBrokers());
+        assertThat(state.getGroupIds(), is(Collections.singleton("group2")));
+    }
+
+    @Test
+    public void testReplicatedAddress() throws Exception {
+        Map<String, Broker> brokers = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            brokers.put("br" + i, new TestBroker("br" + i, "localhost", 0));
+        }
+        await(state.brokersAdded("group1", brokers));
+
+        Map<String, Integer> replicas = Collections.singletonMap("queue1", 3);
+        await(state.addressesChanged(Collections.singletonMap("group1", AddressChange.of(Sets.newSet("queue1", "queue2"), Collections.emptySet(), replicas))));
+        assertThat(countHolding(brokers, "queue1"), is(3));
+        assertThat(countHolding(brokers, "queue2"), is(1));
+
+        await(state.brokerRemoved("group1", state.getGroupState("group1").getAssignment().entrySet().stream()
+                .filter(entry -> entry.getValue().contains("queue1"))
+                .findFirst().get().getKey()));
+        assertThat(countHolding(state.getGroupState("group1").getBrokers(), "queue1"), is(3));
+
+        replicas = Collections.singletonMap("queue1", 0);
+        await(state.addressesChanged(Collections.singletonMap("group1", AddressChange.of(Collections.emptySet(), Collections.emptySet(), replicas))));
+        assertThat(countHolding(state.getGroupState("group1").getBrokers(), "queue1"), is(1));
+    }
+
+    @Test
+    public void testSurplusReplicasDeletedOnceDrained() throws Exception {
+        Map<String, Broker> brokers = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            brokers.put("br" + i, new TestBroker("br" + i, "localhost", 0));
+        }
+        await(state.brokersAdded("group1", brokers));
+        await(state.addressesChanged(Collections.singletonMap("group1", AddressChange.of(Sets.newSet("queue1", "queue2"), Collections.emptySet(), Collections.singletonMap("queue1", 3)))));
+        assertThat(countHolding(brokers, "queue1"), is(3));
+        for (Broker broker : brokers.values()) {
+            ((TestBroker) broker).setMessageCount("queue1", 5);
+        }
+
+        await(state.addressesChanged(Collections.singletonMap("group1", AddressChange.of(Collections.emptySet(), Collections.emptySet(), Collections.singletonMap("queue1", 1)))));
+        assertThat(countHolding(brokers, "queue1"), is(3));
+        assertThat(state.getPlacementMap().lookup("queue1").getBrokers().size(), is(3));
+
+        await(state.checkBrokers());
+        assertThat(countHolding(brokers, "queue1"), is(3));
+
+        for (Broker broker : brokers.values()) {
+            ((TestBroker) broker).setMessageCount("queue1", 0);
+        }
+        await(state.checkBrokers());
+        assertThat(countHolding(brokers, "queue1"), is(1));
+
+        await(state.checkBrokers());
+        assertThat(state.getPlacementMap().lookup("queue1").getBrokers().size(), is(1));
+        assertThat(countHolding(brokers, "queue1"), is(1));
+    }
+
+    @Test
+    public void testPlacementMap() throws Exception {
+        Map<String, Broker> brokers = new LinkedHashMap<>();
+        brokers.put("br1", new TestBroker("br1", "localhost", 0));
+        brokers.put("br2", new TestBroker("br2", "localhost", 0));
+        await(state.brokersAdded("group1", brokers));
+        await(state.addressesChanged(Collections.singletonMap("group1", AddressChange.of(Sets.newSet("queue1", "queue2"), Collections.emptySet(), Collections.singletonMap("queue2", 2)))));
+
+        PlacementMap placementMap = state.getPlacementMap();
+        PlacementMap.Location location = placementMap.lookup("queue1");
+        assertThat(location.getGroupId(), is("group1"));
+        assertThat(location.getBrokers().size(), is(1));
+        assertThat(placementMap.lookup("queue2").getBrokers().size(), is(2));
+        assertThat(placementMap.lookup(Arrays.asList("queue1", "queue2", "queue3")).keySet(), is(Sets.newSet("queue1", "queue2")));
+
+        await(state.brokerRemoved("group1", "br1"));
+        assertThat(placementMap.lookup("queue1").getBrokers(), is(Collections.singletonList("br2")));
+        assertThat(placementMap.lookup("queue2").getBrokers(), is(Collections.singletonList("br2")));
+
+        await(state.addressesChanged(Collections.singletonMap("group1", AddressChange.removed(Sets.newSet("queue1")))));
+        assertNull(placementMap.lookup("queue1"));
+    }
+
+    @Test
+    public void testExistingQueuesKeptWhenBrokersAttachFirst() throws Exception {
+        TestBroker br1 = new TestBroker("br1", "localhost", 0);
+        TestBroker br2 = new TestBroker("br2", "localhost", 0);
+        br1.deployQueue("queue1");
+        br1.deployQueue("queue2");
+        br2.deployQueue("queue3");
+        Map<String, Broker> brokers = new LinkedHashMap<>();
+        brokers.put("br1", br1);
+        brokers.put("br2", br2);
+        await(state.brokersAdded("group1", brokers));
+
+        await(state.groupUpdated("group1", Sets.newSet("queue1", "queue2", "queue3", "queue4")));
+        assertThat(countHolding(brokers, "queue1"), is(1));
+        assertThat(countHolding(brokers, "queue2"), is(1));
+        assertThat(countHolding(brokers, "queue3"), is(1));
+        assertThat(countHolding(brokers, "queue4"), is(1));
+        assertThat(br1.getQueueNames(), hasItem("queue1"));
+        assertThat(br1.getQueueNames(), hasItem("queue2"));
+        assertThat(br2.getQueueNames(), hasItem("queue3"));
+        assertThat(br2.getQueueNames(), hasItem("queue4"));
+    }
+
+    @Test
+    public void testScalableAddressOnLimitedBrokers() throws Exception {
+        state.setScalableReplicas(2);
+        Map<String, Broker> brokers = new LinkedHashMap<>();
+        for (int i = 0; i < 4; i++) {
+            brokers.put("br" + i, new TestBroker("br" + i, "localhost", 0));
+        }
+        await(state.brokersAdded("group1", brokers));
+        await(state.groupUpdated("group1", Sets.newSet("queue1")));
+        assertThat(countHolding(brokers, "queue1"), is(2));
+    }
+
+    private static int countHolding(Map<String, Broker> brokers, String address) {
+        int count = 0;
+        for (Broker broker : brokers.values()) {
+            if (broker.getQueueNames().contains(address)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static class CountingLimiter implements GroupState.MoveLimiter {
+        private final int maxMoves;
+        private int started = 0;
+
+        private CountingLimiter(int maxMoves) {
+            this.maxMoves = maxMoves;
+        }
+
+        @Override
+        public boolean tryStartMove() {
+            if (started < maxMoves) {
+                started++;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void moveCompleted() {
+        }
+    }
+
+    private static void await(CompletionStage<Void> stage) throws Exception {
+        stage.toCompletableFuture().get(1, TimeUnit.MINUTES);
+    }
+
+    private static class FailingBroker implements Broker {
+        private volatile boolean available = true;
+
+        @Override
+        public CompletionStage<Void> deployQueue(String address) {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            result.completeExceptionally(new TimeoutException("Timed out deploying " + address));
+            return result;
+        }
+
+        @Override
+        public CompletionStage<Void> deleteQueue(String address) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public Set<String> getQueueNames() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public CompletionStage<Long> getMessageCount(String address) {
+            return CompletableFuture.completedFuture(0L);
+        }
+
+        @Override
+        public long getNumQueues() {
+            return 0;
+        }
+
+        @Override
+        public BrokerLoad getLoad() {
+            return BrokerLoad.EMPTY;
+        }
+
+        @Override
+        public Histogram getManagementRoundTripTimes() {
+            return Histogram.latency();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return available;
+        }
+    }
+
+    private static class StalledBroker implements Broker {
+        private final Set<String> queues = new LinkedHashSet<>();
+        private final CompletableFuture<Void> released = new CompletableFuture<>();
+
+        @Override
+        public synchronized CompletionStage<Void> deployQueue(String address) {
+            queues.add(address);
+            return released;
+        }
+
+        @Override
+        public synchronized CompletionStage<Void> deleteQueue(String address) {
+            queues.remove(address);
+            return released;
+        }
+
+        @Override
+        public synchronized Set<String> getQueueNames() {
+            return Collections.unmodifiableSet(new LinkedHashSet<>(queues));
+        }
+
+        @Override
+        public CompletionStage<Long> getMessageCount(String address) {
+            return released.thenApply(v -> 0L);
+        }
+
+        @Override
+        public synchronized long getNumQueues() {
+            return queues.size();
+        }
+
+        @Override
+        public BrokerLoad getLoad() {
+            return BrokerLoad.EMPTY;
+        }
+
+        @Override
+        public Histogram getManagementRoundTripTimes() {
+            return Histogram.latency();
+        }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+        public void release() {
+            released.complete(null);
+        }
+    }
+}
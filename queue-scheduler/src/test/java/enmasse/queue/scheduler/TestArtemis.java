@@ -17,6 +17,7 @@
 package enmasse.queue.scheduler;
 
 import com.google.common.io.Files;
+import org.apache.activemq.artemis.api.core.RoutingType;
 import org.apache.activemq.artemis.api.core.SimpleString;
 import org.apache.activemq.artemis.api.core.TransportConfiguration;
 import org.apache.activemq.artemis.core.config.Configuration;
@@ -76,6 +77,15 @@ public class TestArtemis {
         return server.getActiveMQServer().isActive();
     }
 
+    public void createQueue(String name) throws Exception {
+        SimpleString queue = SimpleString.toSimpleString(name);
+        server.getActiveMQServer().createQueue(queue, RoutingType.ANYCAST, queue, null, false, false);
+    }
+
+    public void destroyQueue(String name) throws Exception {
+        server.getActiveMQServer().destroyQueue(SimpleString.toSimpleString(name));
+    }
+
     public ActiveMQServer getServer() {
         return server.getActiveMQServer();
     }
@@ -22,7 +22,11 @@ import io.vertx.proton.ProtonConnection;
 
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class TestBroker extends AbstractVerticle implements Broker {
@@ -30,7 +34,10 @@ public class TestBroker extends AbstractVerticle implements Broker {
     private final String schedulerHost;
     private final int schedulerPort;
     private final Set<String> addressSet = new LinkedHashSet<>();
+    private final Map<String, Long> messageCounts = new ConcurrentHashMap<>();
     private volatile ProtonConnection connection;
+    private volatile BrokerLoad load = BrokerLoad.EMPTY;
+    private final Histogram roundTripTimes = Histogram.latency();
 
     public TestBroker(String id, String schedulerHost, int schedulerPort) {
         this.id = id;
@@ -57,14 +64,20 @@ public class TestBroker extends AbstractVerticle implements Broker {
     }
 
     @Override
-    public synchronized void deployQueue(String address) {
+    public synchronized CompletionStage<Void> deployQueue(String address) {
         addressSet.add(address);
+        return CompletableFuture.completedFuture(null);
     }
 
     @Override
-    public synchronized void deleteQueue(String address) {
+    public synchronized CompletionStage<Void> deleteQueue(String address) {
         addressSet.remove(address);
+        return CompletableFuture.completedFuture(null);
+    }
 
+    @Override
+    public CompletionStage<Long> getMessageCount(String address) {
+        return CompletableFuture.completedFuture(messageCounts.getOrDefault(address, 0L));
     }
 
     @Override
@@ -77,6 +90,29 @@ public class TestBroker extends AbstractVerticle implements Broker {
         return Collections.unmodifiableSet(addressSet);
     }
 
+    @Override
+    public BrokerLoad getLoad() {
+        return load;
+    }
+
+    @Override
+    public Histogram getManagementRoundTripTimes() {
+        return roundTripTimes;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    public void setLoad(BrokerLoad load) {
+        this.load = load;
+    }
+
+    public void setMessageCount(String address, long count) {
+        messageCounts.put(address, count);
+    }
+
     public void close() {
         if (connection != null) {
             connection.close();
@@ -36,7 +36,7 @@ public class TestBrokerFactory implements BrokerFactory {
     }
 
     @Override
-    public Future<Broker> createBroker(ProtonConnection connection) {
+    public CompletionStage<Broker> createBroker(ProtonConnection connection) {
         CompletableFuture<Broker> broker = new CompletableFuture<>();
         broker.complete(brokerMap.get(connection.getRemoteContainer()));
         return broker;
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.junit.Test;
+import org.mockito.internal.util.collections.Sets;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TraceEventTest {
+    @Test
+    public void testAddressesChangedRoundTrip() throws Exception {
+        AddressChange change = AddressChange.of(Sets.newSet("queue1", "queue2"), Sets.newSet("queue3"), Collections.singletonMap("queue1", 2));
+        TraceEvent decoded = TraceEvent.decode(TraceEvent.addressesChanged(42, "group1", change).encode());
+
+        assertThat(decoded.getTime(), is(42L));
+        assertThat(decoded.getType(), is(TraceEvent.Type.ADDRESSES_CHANGED));
+        assertThat(decoded.getGroupId(), is("group1"));
+        assertFalse(decoded.getChange().isReset());
+        assertThat(decoded.getChange().getAdded(), is(Sets.newSet("queue1", "queue2")));
+        assertThat(decoded.getChange().getRemoved(), is(Sets.newSet("queue3")));
+        assertThat(decoded.getChange().getReplicas(), is(Collections.singletonMap("queue1", 2)));
+
+        AddressChange reset = AddressChange.groupRemoved().merge(AddressChange.added(Sets.newSet("queue4")));
+        decoded = TraceEvent.decode(TraceEvent.addressesChanged(43, "group1", reset).encode());
+        assertTrue(decoded.getChange().isReset());
+        assertThat(decoded.getChange().getAdded(), is(Sets.newSet("queue4")));
+    }
+
+    @Test
+    public void testRecordBrokerChanges() throws Exception {
+        StringWriter writer = new StringWriter();
+        TraceRecorder recorder = new TraceRecorder(writer);
+        Map<String, Set<String>> brokers = new LinkedHashMap<>();
+        brokers.put("broker1", Sets.newSet("queue1"));
+        brokers.put("broker2", Collections.emptySet());
+        recorder.brokersAdded("group1", brokers);
+        recorder.brokerRemoved("group1", "broker1");
+        recorder.close();
+
+        String[] lines = writer.toString().split("\n");
+        assertThat(lines.length, is(2));
+        TraceEvent added = TraceEvent.decode(lines[0]);
+        assertThat(added.getType(), is(TraceEvent.Type.BROKERS_ADDED));
+        assertThat(added.getBrokers(), is(brokers));
+        TraceEvent removed = TraceEvent.decode(lines[1]);
+        assertThat(removed.getType(), is(TraceEvent.Type.BROKER_REMOVED));
+        assertThat(removed.getBrokers().keySet(), is(Collections.singleton("broker1")));
+    }
+
+    @Test
+    public void testEventsDroppedWhileWriterIsBehind() throws Exception {
+        CountDownLatch released = new CountDownLatch(1);
+        StringWriter output = new StringWriter();
+        Writer writer = new FilterWriter(output) {
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                super.write(str, off, len);
+            }
+        };
+        TraceRecorder recorder = new TraceRecorder(writer, 1);
+        for (int i = 0; i < 10; i++) {
+            recorder.brokerRemoved("group1", "broker" + i);
+        }
+        assertTrue(recorder.getDroppedEvents() >= 8);
+
+        released.countDown();
+        recorder.close();
+        String[] lines = output.toString().split("\n");
+        assertThat((long) lines.length, is(10 - recorder.getDroppedEvents()));
+        assertThat(TraceEvent.decode(lines[0]).getBrokers().keySet(), is(Collections.singleton("broker0")));
+    }
+}
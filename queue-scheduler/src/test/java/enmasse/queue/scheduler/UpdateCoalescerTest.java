@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class UpdateCoalescerTest {
+    @Test
+    public void testPendingUpdatesAreCoalesced() {
+        List<String> applied = new ArrayList<>();
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        UpdateCoalescer<String> coalescer = new UpdateCoalescer<>(update -> {
+            applied.add(update);
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            results.add(result);
+            return result;
+        }, (pending, latest) -> pending + "+" + latest);
+
+        coalescer.submit("a");
+        coalescer.submit("b");
+        coalescer.submit("c");
+        coalescer.submit("d");
+        assertThat(applied.size(), is(1));
+
+        results.get(0).complete(null);
+        assertThat(applied.size(), is(2));
+        assertThat(applied.get(1), is("b+c+d"));
+
+        results.get(1).complete(null);
+        coalescer.submit("e");
+        assertThat(applied.size(), is(3));
+        assertThat(applied.get(2), is("e"));
+    }
+
+    @Test
+    public void testFailedUpdateDoesNotBlockLaterUpdates() {
+        List<String> applied = new ArrayList<>();
+        UpdateCoalescer<String> coalescer = new UpdateCoalescer<>(update -> {
+            applied.add(update);
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            result.completeExceptionally(new RuntimeException("failed"));
+            return result;
+        }, (pending, latest) -> latest);
+
+        coalescer.submit("a");
+        coalescer.submit("b");
+        assertThat(applied.size(), is(2));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.queue.scheduler;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class WeightedLoadPlacementTest {
+    private final WeightedLoadPlacement placement = new WeightedLoadPlacement();
+
+    @Test
+    public void testPlacesOnLeastLoadedBroker() {
+        TestBroker busy = new TestBroker("busy", "localhost", 0);
+        TestBroker idle = new TestBroker("idle", "localhost", 0);
+        busy.deployQueue("queue1");
+        idle.deployQueue("queue2");
+        idle.deployQueue("queue3");
+        busy.setLoad(new BrokerLoad(1000000, 10, 0));
+
+        Map<String, Broker> brokers = new LinkedHashMap<>();
+        brokers.put("busy", busy);
+        brokers.put("idle", idle);
+
+        assertThat(placement.selectBroker("queue4", brokers), is("idle"));
+    }
+
+    @Test
+    public void testPlacesOnFewestQueuesWithEqualLoad() {
+        TestBroker br1 = new TestBroker("br1", "localhost", 0);
+        TestBroker br2 = new TestBroker("br2", "localhost", 0);
+        br1.deployQueue("queue1");
+
+        Map<String, Broker> brokers = new LinkedHashMap<>();
+        brokers.put("br1", br1);
+        brokers.put("br2", br2);
+
+        assertThat(placement.selectBroker("queue2", brokers), is("br2"));
+        br2.deployQueue("queue2");
+        br2.deployQueue("queue3");
+        assertThat(placement.selectBroker("queue4", brokers), is("br1"));
+    }
+}